@@ -9,6 +9,7 @@ plugins {
     alias(libs.plugins.changelog) // Gradle Changelog Plugin
     alias(libs.plugins.qodana) // Gradle Qodana Plugin
     alias(libs.plugins.kover) // Gradle Kover Plugin
+    alias(libs.plugins.jmh) // JMH benchmarks
 }
 
 group = providers.gradleProperty("pluginGroup").get()
@@ -35,6 +36,11 @@ dependencies {
     testImplementation(libs.opentest4j)
     implementation("org.jsoup:jsoup:1.17.2")
     implementation("com.squareup.okhttp3:okhttp:4.11.0")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.11.0")
+    // Gson 在 IDE 运行时由平台提供，基准测试需要单独引入
+    jmh("com.google.code.gson:gson:2.11.0")
+    // 基准测试中统计对象图的保留大小
+    jmh("org.openjdk.jol:jol-core:0.17")
     // IntelliJ Platform Gradle Plugin Dependencies Extension - read more: https://plugins.jetbrains.com/docs/intellij/tools-intellij-platform-gradle-plugin-dependencies-extension.html
     intellijPlatform {
         intellijIdea(providers.gradleProperty("platformVersion"))
@@ -127,6 +133,19 @@ kover {
     }
 }
 
+// Configure JMH benchmarks (src/jmh) - run with ./gradlew jmh
+// The gc profiler adds gc.alloc.rate.norm (bytes allocated per operation) next to each timing;
+// results are written as JSON so runs can be compared before and after a change.
+jmh {
+    jmhVersion = "1.37"
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+}
+
 tasks {
     wrapper {
         gradleVersion = providers.gradleProperty("gradleVersion").get()
@@ -0,0 +1,46 @@
+package com.github.newnovicechen.zhihureader.benchmark;
+
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 读取 src/jmh/resources/fixtures 下的回答列表响应。
+ * <p>
+ * 每个文件是 /questions/{id}/answers 返回的一页，只有一个回答，整个响应约 5KB、50KB 或 500KB，
+ * 字段和正文标记（带 data-pid 的段落、noscript 加懒加载 img 的 figure、代码块、外链）与知乎接口一致。
+ * text 以文字段落为主；image 中图片和文字段落交替出现。
+ */
+final class AnswerFixtures {
+    private AnswerFixtures() {
+    }
+
+    /**
+     * @param kind "text" 或 "image"
+     * @param kb   5、50 或 500
+     */
+    static byte[] payload(String kind, int kb) {
+        String name = "/fixtures/answer-" + kind + "-" + kb + "kb.json";
+        try (InputStream in = AnswerFixtures.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("没有这个 fixture：" + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 回答正文的 HTML。
+     */
+    static String content(String kind, int kb) {
+        String json = new String(payload(kind, kb), StandardCharsets.UTF_8);
+        return JsonParser.parseString(json).getAsJsonObject()
+                .getAsJsonArray("data").get(0).getAsJsonObject()
+                .get("content").getAsString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.newnovicechen.zhihureader.benchmark;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1000 个回答在内存中的保留大小：对比以 String 保存正文和作者名（{@link Answer} 压缩存储之前的做法）
+ * 和现在的 {@link Answer}。保留大小由 JOL 统计，作为 {@link Footprint} 辅助计数器随结果一起报告；计时部分测量压缩存入和
+ * 解码取出一个回答的开销。
+ * 正文取自 {@link AnswerFixtures}，作者名只有 20 个，模拟同一作者出现在多个页面中。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnswerFootprintBenchmark {
+    private static final int ANSWER_COUNT = 1000;
+    private static final int AUTHOR_COUNT = 20;
+
+    // 响应的大约大小（KB）
+    @Param({"5", "50"})
+    public int answerKb;
+
+    @Param({"text", "image"})
+    public String kind;
+
+    private String content;
+    private Answer answer;
+    private long stringBytes;
+    private long answerBytes;
+
+    /**
+     * 1000 个回答的保留大小（KB），不随迭代变化，每次迭代重新填入。
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedStringKb;
+        public long retainedAnswerKb;
+
+        @Setup(Level.Iteration)
+        public void fill(AnswerFootprintBenchmark benchmark) {
+            retainedStringKb = benchmark.stringBytes / 1024;
+            retainedAnswerKb = benchmark.answerBytes / 1024;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        content = AnswerFixtures.content(kind, answerKb);
+        answer = new Answer("作者", content);
+
+        // 每个回答的正文和作者名都是独立的字符串对象，和从 JSON 解码出来时一样
+        List<String[]> strings = new ArrayList<>(ANSWER_COUNT);
+        List<Answer> answers = new ArrayList<>(ANSWER_COUNT);
+        for (int i = 0; i < ANSWER_COUNT; i++) {
+            String text = "<p>" + i + "</p>" + content;
+            String author = new String("作者" + i % AUTHOR_COUNT);
+            strings.add(new String[]{author, text});
+            answers.add(new Answer(new String(author), text));
+        }
+        stringBytes = GraphLayout.parseInstance(strings).totalSize();
+        answerBytes = GraphLayout.parseInstance(answers).totalSize();
+    }
+
+    @Benchmark
+    public Answer store(Footprint footprint) {
+        return new Answer("作者", content);
+    }
+
+    @Benchmark
+    public String load(Footprint footprint) {
+        return answer.getAnswerContent();
+    }
+}
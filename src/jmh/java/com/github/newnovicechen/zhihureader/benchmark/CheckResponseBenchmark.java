@@ -0,0 +1,85 @@
+package com.github.newnovicechen.zhihureader.benchmark;
+
+import com.github.newnovicechen.zhihureader.exception.HttpException;
+import com.github.newnovicechen.zhihureader.utils.AnswerPageDecoder;
+import com.github.newnovicechen.zhihureader.utils.SendHttpUtil;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比旧版 checkResponse（先读成字符串、解析两次）、单次流式解析成 JSON 树和只取所需字段的
+ * {@link AnswerPageDecoder} 的开销。响应取自 {@link AnswerFixtures}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CheckResponseBenchmark {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final Request REQUEST = new Request.Builder().url("https://www.zhihu.com/api/v4/questions/1/answers").build();
+
+    // 响应的大约大小（KB）
+    @Param({"5", "50", "500"})
+    public int answerKb;
+
+    @Param({"text", "image"})
+    public String kind;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        payload = AnswerFixtures.payload(kind, answerKb);
+    }
+
+    private Response response() {
+        return new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(payload, JSON))
+                .build();
+    }
+
+    @Benchmark
+    public JsonObject singlePass() {
+        return SendHttpUtil.checkResponse(response(), JsonObject.class);
+    }
+
+    @Benchmark
+    public List<AnswerPageDecoder.Item> decoder() {
+        return SendHttpUtil.checkResponse(response(), AnswerPageDecoder.INSTANCE);
+    }
+
+    @Benchmark
+    public JsonObject legacy() {
+        return legacyCheckResponse(response(), JsonObject.class);
+    }
+
+    // 优化前的实现，保留在这里作为对照
+    private static <T> T legacyCheckResponse(Response response, Class<T> clazz) throws HttpException {
+        if (!response.isSuccessful()) {
+            throw new HttpException("远程调用失败");
+        }
+        String s;
+        try {
+            s = response.body().string();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        JsonObject jsonObject = JsonParser.parseString(s).getAsJsonObject();
+        if (jsonObject.has("code")) {
+            if (jsonObject.get("code").getAsInt() != 200) {
+                throw new HttpException(jsonObject.get("errorStackTrace").getAsString());
+            }
+        }
+        return new Gson().fromJson(s, clazz);
+    }
+}
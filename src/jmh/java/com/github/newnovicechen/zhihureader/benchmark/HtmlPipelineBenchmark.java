@@ -0,0 +1,100 @@
+package com.github.newnovicechen.zhihureader.benchmark;
+
+import com.github.newnovicechen.zhihureader.toolWindow.ZhihuToolWindowFactory;
+import com.github.newnovicechen.zhihureader.utils.AnswerContent;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比旧版 preprocessHtmlForSwing + htmlToPlainText（两次解析）和 {@link AnswerContent} 单次解析、
+ * 一次遍历同时生成两种输出的开销，另外单独测量两个转换方法。正文取自 {@link AnswerFixtures}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HtmlPipelineBenchmark {
+    private static final int IMAGE_MAX_WIDTH = 600;
+
+    // 响应的大约大小（KB）
+    @Param({"5", "50", "500"})
+    public int answerKb;
+
+    @Param({"text", "image"})
+    public String kind;
+
+    private String html;
+
+    @Setup
+    public void setUp() {
+        html = AnswerFixtures.content(kind, answerKb);
+    }
+
+    @Benchmark
+    public void singleParse(Blackhole bh) {
+        AnswerContent content = new AnswerContent(html, IMAGE_MAX_WIDTH);
+        bh.consume(content.swingHtml());
+        bh.consume(content.plainText());
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        bh.consume(legacyPreprocessHtmlForSwing(html, IMAGE_MAX_WIDTH));
+        bh.consume(legacyHtmlToPlainText(html));
+    }
+
+    @Benchmark
+    public String htmlToPlainText() {
+        return ZhihuToolWindowFactory.htmlToPlainText(html);
+    }
+
+    @Benchmark
+    public String preprocessHtmlForSwing() {
+        return ZhihuToolWindowFactory.preprocessHtmlForSwing(html, IMAGE_MAX_WIDTH);
+    }
+
+    // 优化前的实现，保留在这里作为对照
+
+    private static String legacyHtmlToPlainText(String html) {
+        if (html == null) return "";
+        Document doc = Jsoup.parse(html);
+
+        for (Element br : doc.select("br")) br.after("\n");
+        for (Element p : doc.select("p")) p.after("\n");
+        for (Element li : doc.select("li")) li.prepend("• ").after("\n");
+
+        String text = doc.text();
+        text = doc.body().wholeText();
+
+        return text.replace("\u00A0", " ").trim();
+    }
+
+    private static String legacyPreprocessHtmlForSwing(String htmlContent, int maxWidth) {
+        if (htmlContent == null || htmlContent.isEmpty()) {
+            return "";
+        }
+        Document doc = Jsoup.parse(htmlContent);
+        doc.select("noscript").remove();
+        for (Element img : doc.select("img")) {
+            if (img.hasAttr("data-actualsrc")) {
+                img.attr("src", img.attr("data-actualsrc"));
+            } else if (img.hasAttr("data-original")) {
+                img.attr("src", img.attr("data-original"));
+            }
+            String style = img.attr("style");
+            if (style != null && !style.isEmpty()) {
+                style = style.replaceAll("width:[^;]+;?", "");
+                style = style.replaceAll("height:[^;]+;?", "");
+                style = style.replaceAll("max-width:[^;]+;?", "");
+                img.attr("style", style);
+            }
+            img.attr("width", String.valueOf(maxWidth));
+            img.attr("height", "auto");
+        }
+        return doc.body().html();
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.newnovicechen.zhihureader.benchmark;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.services.OfflineStore;
+import com.github.newnovicechen.zhihureader.services.SearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 十万个回答的索引上的查询耗时。正文从一小段常用字里随机抽取，常见词的倒排表很长，接近真实的最坏情况。
+ * <p>
+ * 最新加入的两页（最先返回的 20 个结果）用 fixture 中 5KB、50KB 或 500KB 的真实回答，中间插入一段随机文字，
+ * 衡量长回答生成摘要的开销。回答页和应用中一样保存在 {@link OfflineStore} 里，重新索引时从这里取原文。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchIndexBenchmark {
+    private static final String WORDS = "知乎回答问题机器学习深度网络模型数据程序设计语言协程编译性能内存线程文件索引搜索历史经济社会文化电影音乐旅行工作生活";
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"100000"})
+    public int answers;
+
+    @Param({"机器学习", "性能 内存", "协程编译器"})
+    public String query;
+
+    // 最新两页的回答大小（KB）
+    @Param({"5", "50", "500"})
+    public int kb;
+
+    private Path dir;
+    private OfflineStore store;
+    private SearchIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("zhihu-search");
+        Random random = new Random(42);
+        store = new OfflineStore(dir.resolve("offline.dat"));
+        index = new SearchIndex(dir.resolve("index"), store::getPage);
+        String fixture = AnswerFixtures.content("text", kb);
+        int middle = fixture.indexOf("</p>", fixture.length() / 2) + 4;
+        int pages = answers / PAGE_SIZE;
+        for (int page = 0; page < pages; page++) {
+            List<Answer> list = new ArrayList<>(PAGE_SIZE);
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                String words = randomParagraph(random);
+                String content = page < pages - 2 ? words
+                        : fixture.substring(0, middle) + words + fixture.substring(middle);
+                list.add(new Answer("作者" + random.nextInt(1000), content));
+            }
+            String questionId = Integer.toString(page / 5);
+            int offset = page % 5 * PAGE_SIZE;
+            store.putPage(questionId, offset, list);
+            index.addPage(questionId, offset, list);
+        }
+        index.flush();
+    }
+
+    private static String randomParagraph(Random random) {
+        StringBuilder content = new StringBuilder("<p>");
+        for (int c = 0; c < 300; c++) {
+            content.append(WORDS.charAt(random.nextInt(WORDS.length())));
+        }
+        return content.append("</p>").toString();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SearchIndex.SearchHit> search() {
+        return index.search(query, 20);
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.newnovicechen.zhihureader.toolWindow;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.services.ImageLoader;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * 一页 10 个约 50KB 回答的排版耗时：整页一个 JEditorPane 文档，对比按视口虚拟化的 {@link AnswerListView}。
+ * 分别测量首次显示和窗口宽度变化后的重新排版。虚拟化列表的行文档在后台构建、组件在 EDT 上创建，计时包含等待构建完成。
+ * 放在 toolWindow 包中，以便访问包内可见的类。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnswerLayoutBenchmark {
+    private static final int ANSWER_COUNT = 10;
+    private static final int IMAGE_MAX_WIDTH = 600;
+    private static final int VIEWPORT_HEIGHT = 800;
+
+    @Param({"50"})
+    public int answerKb;
+
+    private final ImageLoader imageLoader = new ImageLoader(null, 64L * 1024 * 1024);
+    private AnswerPageView page;
+    private String pageHtml;
+
+    // 重新排版测试用的已显示组件，每次在两个宽度之间切换
+    private JEditorPane wholeDocument;
+    private JScrollPane virtualized;
+    private final AtomicInteger resizeCount = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < answerKb * 1024) {
+            content.append("<p>知乎回答正文，包含<b>加粗</b>和<a href=\"https://zhuanlan.zhihu.com\">链接</a>。")
+                    .append("这是一段比较长的文字，用来模拟真实回答里的段落，在窗口宽度变化时需要重新折行。</p>")
+                    .append("<figure><img src=\"https://pic1.zhimg.com/v2-abc_b.jpg\" data-rawwidth=\"1080\" data-rawheight=\"720\"/></figure>");
+        }
+        List<Answer> answers = new ArrayList<>();
+        for (int i = 0; i < ANSWER_COUNT; i++) {
+            answers.add(new Answer("作者" + i, content.toString()));
+        }
+        page = new AnswerPageView(new Question("1", "测试问题"), 0, answers, IMAGE_MAX_WIDTH);
+        // 预处理不计入排版时间
+        pageHtml = page.html();
+
+        SwingUtilities.invokeAndWait(() -> wholeDocument = newWholeDocument());
+        virtualized = newVirtualized();
+    }
+
+    private JEditorPane newWholeDocument() {
+        JEditorPane pane = new JEditorPane();
+        pane.setEditable(false);
+        pane.setEditorKit(new ZhihuHtmlEditorKit(imageLoader, IMAGE_MAX_WIDTH));
+        pane.setText(pageHtml);
+        layout(pane, IMAGE_MAX_WIDTH);
+        return pane;
+    }
+
+    private JScrollPane newVirtualized() throws Exception {
+        JScrollPane[] scrollPane = new JScrollPane[1];
+        SwingUtilities.invokeAndWait(() -> {
+            AnswerListView view = new AnswerListView(() -> new ZhihuHtmlEditorKit(imageLoader, IMAGE_MAX_WIDTH));
+            scrollPane[0] = new JScrollPane(view);
+            view.setPage(page);
+        });
+        layoutUntilBuilt(scrollPane[0], IMAGE_MAX_WIDTH);
+        return scrollPane[0];
+    }
+
+    private static int layout(JEditorPane pane, int width) {
+        pane.setSize(width, Short.MAX_VALUE);
+        return pane.getPreferredSize().height;
+    }
+
+    // 组件没有显示出来，validate 不会排版，按 Swing 的顺序直接调用布局直到行高稳定
+    private static int layout(JScrollPane scrollPane, int width) {
+        scrollPane.setSize(width, VIEWPORT_HEIGHT);
+        for (int i = 0; i < 3; i++) {
+            scrollPane.doLayout();
+            scrollPane.getViewport().doLayout();
+            scrollPane.getViewport().getView().doLayout();
+        }
+        return scrollPane.getViewport().getView().getPreferredSize().height;
+    }
+
+    // 在 EDT 上排版，直到后台构建的行都加入列表。在 EDT 之外调用
+    private static int layoutUntilBuilt(JScrollPane scrollPane, int width) throws Exception {
+        AnswerListView view = (AnswerListView) scrollPane.getViewport().getView();
+        while (true) {
+            int[] height = new int[1];
+            boolean[] building = new boolean[1];
+            SwingUtilities.invokeAndWait(() -> {
+                height[0] = layout(scrollPane, width);
+                building[0] = view.isBuildingRows();
+            });
+            if (!building[0]) {
+                return height[0];
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // 两个宽度都比图片宽，变化的只是文字折行
+    private int nextWidth() {
+        return resizeCount.incrementAndGet() % 2 == 0 ? IMAGE_MAX_WIDTH + 100 : IMAGE_MAX_WIDTH + 60;
+    }
+
+    private static int onEdt(IntSupplier task) throws Exception {
+        int[] result = new int[1];
+        SwingUtilities.invokeAndWait(() -> result[0] = task.getAsInt());
+        return result[0];
+    }
+
+    @Benchmark
+    public int wholeDocumentFirstLayout() throws Exception {
+        return onEdt(() -> newWholeDocument().getHeight());
+    }
+
+    @Benchmark
+    public int virtualizedFirstLayout() throws Exception {
+        return newVirtualized().getViewport().getView().getHeight();
+    }
+
+    @Benchmark
+    public int wholeDocumentResize() throws Exception {
+        return onEdt(() -> layout(wholeDocument, nextWidth()));
+    }
+
+    @Benchmark
+    public int virtualizedResize() throws Exception {
+        return layoutUntilBuilt(virtualized, nextWidth());
+    }
+}
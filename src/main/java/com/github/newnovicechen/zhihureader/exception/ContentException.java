@@ -0,0 +1,14 @@
+package com.github.newnovicechen.zhihureader.exception;
+
+/**
+ * 回答正文无法解码，和 Cookie、网络错误区分开，界面上按内容错误显示。
+ */
+public class ContentException extends RuntimeException {
+    public ContentException(String message) {
+        super(message);
+    }
+
+    public ContentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,7 +1,43 @@
 package com.github.newnovicechen.zhihureader.exception;
 
+import org.jetbrains.annotations.Nullable;
+
 public class HttpException extends RuntimeException {
+    // 没有收到 HTTP 响应（网络错误、知乎返回的错误包装等）时为 -1
+    private final int statusCode;
+    private final @Nullable String body;
+
     public HttpException(String message) {
+        this(message, -1, null);
+    }
+
+    public HttpException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = -1;
+        this.body = null;
+    }
+
+    public HttpException(String message, int statusCode, @Nullable String body) {
         super(message);
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 失败响应的响应体，过长时只保留开头的一段。
+     */
+    public @Nullable String getBody() {
+        return body;
+    }
+
+    /**
+     * 是否被知乎限流（403/429）。
+     */
+    public boolean isThrottled() {
+        return statusCode == 403 || statusCode == 429;
     }
 }
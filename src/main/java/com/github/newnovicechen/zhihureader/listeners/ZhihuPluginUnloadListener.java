@@ -0,0 +1,22 @@
+package com.github.newnovicechen.zhihureader.listeners;
+
+import com.github.newnovicechen.zhihureader.services.OfflineStore;
+import com.github.newnovicechen.zhihureader.services.SearchIndex;
+import com.github.newnovicechen.zhihureader.utils.HttpEngine;
+import com.intellij.ide.plugins.DynamicPluginListener;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+// 插件卸载（或更新）前关闭共享的 HTTP 引擎，释放调度线程和连接池，并关闭离线存储和搜索索引
+public class ZhihuPluginUnloadListener implements DynamicPluginListener {
+    private static final String PLUGIN_ID = "com.github.newnovicechen.zhihureader";
+
+    @Override
+    public void beforePluginUnload(@NotNull IdeaPluginDescriptor pluginDescriptor, boolean isUpdate) {
+        if (PLUGIN_ID.equals(pluginDescriptor.getPluginId().getIdString())) {
+            HttpEngine.shutdown();
+            SearchIndex.closeShared();
+            OfflineStore.closeShared();
+        }
+    }
+}
@@ -1,12 +1,33 @@
 package com.github.newnovicechen.zhihureader.model;
 
+import com.github.newnovicechen.zhihureader.exception.ContentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 一个回答。缓存、离线存储和预取的页面会长期持有大量回答，所以正文不以 String 保存：
+ * 先转成 UTF-8（正文大半是 ASCII 标签，比含中文时按 UTF-16 存储的 String 小），较长的再用 Deflate 压缩，
+ * 通常只占原来的几分之一。{@link #getAnswerContent()} 每次调用时才解码，调用方用完不要长期持有结果。
+ * <p>
+ * 同一个作者的回答很多，作者名经过 {@link String#intern()} 去重。
+ */
 public class Answer {
-    String authorName;
-    String answerContent;
+    // 比这短的正文压缩不划算，只存 UTF-8
+    private static final int COMPRESS_THRESHOLD = 256;
+
+    private String authorName;
+    private byte[] content; // 没有正文时为 null
+    private boolean deflated;
+    private int contentLength; // 正文的字符数
+    private int utf8Length;
 
     public Answer(String authorName, String answerContent) {
-        this.authorName = authorName;
-        this.answerContent = answerContent;
+        setAuthorName(authorName);
+        setAnswerContent(answerContent);
     }
 
     public String getAuthorName() {
@@ -14,14 +35,82 @@ public class Answer {
     }
 
     public void setAuthorName(String authorName) {
-        this.authorName = authorName;
+        this.authorName = authorName == null ? null : authorName.intern();
     }
 
+    /**
+     * 解码后的正文，每次调用都会重新解码。
+     *
+     * @throws ContentException 压缩的正文已经损坏
+     */
     public String getAnswerContent() {
-        return answerContent;
+        if (content == null) {
+            return null;
+        }
+        return new String(deflated ? inflate(content, utf8Length) : content, StandardCharsets.UTF_8);
     }
 
     public void setAnswerContent(String answerContent) {
-        this.answerContent = answerContent;
+        if (answerContent == null) {
+            content = null;
+            deflated = false;
+            contentLength = 0;
+            utf8Length = 0;
+            return;
+        }
+        byte[] utf8 = answerContent.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = utf8.length < COMPRESS_THRESHOLD ? null : deflate(utf8);
+        content = compressed != null ? compressed : utf8;
+        deflated = compressed != null;
+        contentLength = answerContent.length();
+        utf8Length = utf8.length;
+    }
+
+    /**
+     * 正文的字符数，不需要解码。
+     */
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    // 压缩后不比原来小时返回 null
+    private static byte[] deflate(byte[] utf8) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            byte[] buffer = new byte[utf8.length];
+            int n = 0;
+            while (!deflater.finished() && n < buffer.length) {
+                n += deflater.deflate(buffer, n, buffer.length - n);
+            }
+            return deflater.finished() && n < utf8.length ? Arrays.copyOf(buffer, n) : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] utf8 = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int read = inflater.inflate(utf8, n, length - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != length) {
+                throw new ContentException("回答正文解压失败");
+            }
+            return utf8;
+        } catch (DataFormatException e) {
+            throw new ContentException("回答正文解压失败", e);
+        } finally {
+            inflater.end();
+        }
     }
 }
@@ -0,0 +1,28 @@
+package com.github.newnovicechen.zhihureader.model;
+
+import java.util.List;
+
+public class FeedPage {
+    public FeedPage(List<Question> questions, String nextUrl, boolean isEnd) {
+        this.questions = questions;
+        this.nextUrl = nextUrl;
+        this.isEnd = isEnd;
+    }
+
+    List<Question> questions;
+    // 下一页的完整地址，来自接口返回的 paging.next
+    String nextUrl;
+    boolean isEnd;
+
+    public List<Question> getQuestions() {
+        return questions;
+    }
+
+    public String getNextUrl() {
+        return nextUrl;
+    }
+
+    public boolean isEnd() {
+        return isEnd;
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 决定一次回答列表请求取多少个回答。界面每页固定显示 {@link ZhihuService#ANSWER_PAGE_SIZE} 个回答，
+ * 一次请求取回的多页按页拆开放进缓存，翻到后面几页时不用再请求；不到一页时一页分几次请求，
+ * 每批到达后立即显示，拼成完整的一页之后再放进缓存。
+ * <p>
+ * 自适应时按最近请求的平均回答长度和网速（正文字符数除以请求耗时，包含往返延迟，所以偏保守）估算，
+ * 在 {@link #SIZES} 中选最大的、预计响应体和耗时都不超过限制的数量：回答短、网速快时一次取 50 个，
+ * 回答很长或网速很慢时一次只取 3 到 5 个，首个回答不用等整页十几 MB 的响应体。
+ * 还没有测量数据时先取一页，不让第一页等待更大的响应。
+ */
+final class AnswerFetchSizer {
+    static final int[] SIZES = {3, 5, ZhihuService.ANSWER_PAGE_SIZE, 20, 50};
+    // SIZES 中一页的位置，没有测量数据时使用
+    private static final int ONE_PAGE = 2;
+    // 一次请求的正文总字符数上限，超过时解码和首屏显示都会明显变慢
+    private static final long MAX_BATCH_CHARS = 1_000_000;
+    // 一次请求在当前网速下的预计耗时上限
+    private static final long TARGET_MILLIS = 1_000;
+    // 新测量值的权重
+    private static final double ALPHA = 0.3;
+
+    private final int fixedSize; // 0 表示自适应
+    // 以下由 this 保护，小于 0 表示还没有测量
+    private double averageChars = -1;
+    private double charsPerMilli = -1;
+
+    /**
+     * @param fixedSize 固定的请求数量，见 {@link #checkSize}；0 表示自适应
+     */
+    AnswerFetchSizer(int fixedSize) {
+        if (fixedSize != 0) {
+            checkSize(fixedSize);
+        }
+        this.fixedSize = fixedSize;
+    }
+
+    /**
+     * 一次请求的回答数必须小于一页，或者是 {@link ZhihuService#ANSWER_PAGE_SIZE} 的倍数。
+     */
+    static void checkSize(int size) {
+        if (size <= 0 || size > ZhihuService.ANSWER_PAGE_SIZE && size % ZhihuService.ANSWER_PAGE_SIZE != 0) {
+            throw new IllegalArgumentException("每次请求的回答数必须小于 " + ZhihuService.ANSWER_PAGE_SIZE + " 或者是它的倍数");
+        }
+    }
+
+    synchronized int nextSize() {
+        if (fixedSize > 0) {
+            return fixedSize;
+        }
+        if (averageChars < 0) {
+            return SIZES[ONE_PAGE];
+        }
+        for (int i = SIZES.length - 1; i > 0; i--) {
+            double chars = SIZES[i] * averageChars;
+            if (chars <= MAX_BATCH_CHARS && chars / charsPerMilli <= TARGET_MILLIS) {
+                return SIZES[i];
+            }
+        }
+        return SIZES[0];
+    }
+
+    /**
+     * 记录一次列表请求：带正文的回答数、正文总字符数和从发出请求到解码完成的耗时。
+     */
+    synchronized void record(int answers, long chars, long nanos) {
+        if (answers == 0 || chars == 0) {
+            return;
+        }
+        double average = (double) chars / answers;
+        double speed = chars / Math.max(1.0, (double) TimeUnit.NANOSECONDS.toMillis(nanos));
+        averageChars = averageChars < 0 ? average : ALPHA * average + (1 - ALPHA) * averageChars;
+        charsPerMilli = charsPerMilli < 0 ? speed : ALPHA * speed + (1 - ALPHA) * charsPerMilli;
+    }
+}
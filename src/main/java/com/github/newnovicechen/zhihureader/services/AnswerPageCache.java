@@ -0,0 +1,208 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 回答页的两级缓存：内存中按页数限制大小的 LRU，磁盘层是 {@link OfflineStore}。
+ * 回答页在磁盘上只保存一份，大小上限和淘汰由离线存储负责。
+ * <p>
+ * 以 (questionId, offset) 为键。TTL 内的页面直接返回；过期的页面保留 ETag/Last-Modified，
+ * 由调用方发起条件请求校验，服务端返回 304 时调用 {@link #revalidated} 续期。过期的页面不会从磁盘删除，
+ * 它们仍然用于条件请求和离线阅读。
+ */
+public final class AnswerPageCache {
+    private static final Logger LOG = Logger.getInstance(AnswerPageCache.class);
+    private static final int DEFAULT_MAX_PAGES = 50;
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static volatile AnswerPageCache shared;
+
+    // 共用缓存每次都取共用的离线存储，存储晚些才打开成功时也能用上
+    private final Supplier<OfflineStore> diskStore;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Page> memory;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    /**
+     * @param diskStore 磁盘层，为 null 时只使用内存缓存
+     * @param maxPages  内存中最多保留的页数
+     * @param ttl       页面的有效期，过期后需要校验
+     */
+    public AnswerPageCache(@Nullable OfflineStore diskStore, int maxPages, long ttl, @NotNull TimeUnit unit) {
+        this(() -> diskStore, maxPages, ttl, unit);
+    }
+
+    private AnswerPageCache(Supplier<OfflineStore> diskStore, int maxPages, long ttl, @NotNull TimeUnit unit) {
+        this.diskStore = diskStore;
+        this.ttlMillis = unit.toMillis(ttl);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Page> eldest) {
+                if (size() > maxPages) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 所有项目共用的缓存，磁盘层是共用的离线存储。
+     */
+    public static AnswerPageCache shared() {
+        AnswerPageCache c = shared;
+        if (c == null) {
+            synchronized (AnswerPageCache.class) {
+                c = shared;
+                if (c == null) {
+                    c = new AnswerPageCache(OfflineStore::shared, DEFAULT_MAX_PAGES, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS);
+                    shared = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 磁盘层，没有或者打开失败时返回 null。
+     */
+    public @Nullable OfflineStore diskStore() {
+        return diskStore.get();
+    }
+
+    /**
+     * 查找缓存页，先查内存再查磁盘。返回的页面可能已经过期，需要用 {@link #isFresh} 判断。
+     */
+    public @Nullable Page get(String questionId, int offset) {
+        String key = key(questionId, offset);
+        Page page;
+        synchronized (memory) {
+            page = memory.get(key);
+        }
+        if (page != null) {
+            memoryHits.incrementAndGet();
+            return page;
+        }
+        OfflineStore store = diskStore.get();
+        page = store == null ? null : store.getCachedPage(questionId, offset);
+        if (page != null) {
+            diskHits.incrementAndGet();
+            synchronized (memory) {
+                memory.put(key, page);
+            }
+            return page;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 内存中是否已有未过期的页面，不计入命中统计，用于判断是否需要预取。
+     */
+    public boolean containsFresh(String questionId, int offset) {
+        Page page;
+        synchronized (memory) {
+            page = memory.get(key(questionId, offset));
+        }
+        return page != null && isFresh(page);
+    }
+
+    public void put(String questionId, int offset, Page page) {
+        String key = key(questionId, offset);
+        synchronized (memory) {
+            memory.put(key, page);
+        }
+        OfflineStore store = diskStore.get();
+        if (store != null) {
+            store.putPage(questionId, offset, page);
+        }
+    }
+
+    public boolean isFresh(Page page) {
+        return System.currentTimeMillis() - page.fetchedAt < ttlMillis;
+    }
+
+    /**
+     * 条件请求返回 304 后调用，页面内容不变，重新开始计算有效期。
+     */
+    public Page revalidated(String questionId, int offset, Page page) {
+        revalidations.incrementAndGet();
+        Page renewed = new Page(page.answers, page.etag, page.lastModified, System.currentTimeMillis());
+        put(questionId, offset, renewed);
+        return renewed;
+    }
+
+    /**
+     * 清空内存层。磁盘上的页面属于离线存储，不在这里删除。
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (memory) {
+            size = memory.size();
+        }
+        return new Stats(memoryHits.get(), diskHits.get(), misses.get(), evictions.get(), revalidations.get(), size);
+    }
+
+    private static String key(String questionId, int offset) {
+        return questionId + "_" + offset;
+    }
+
+    // 缓存中的一页回答及其校验信息
+    public static final class Page {
+        private final List<Answer> answers;
+        private final @Nullable String etag;
+        private final @Nullable String lastModified;
+        private final long fetchedAt;
+
+        public Page(List<Answer> answers, @Nullable String etag, @Nullable String lastModified, long fetchedAt) {
+            this.answers = List.copyOf(answers);
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public List<Answer> getAnswers() {
+            return answers;
+        }
+
+        public @Nullable String getEtag() {
+            return etag;
+        }
+
+        public @Nullable String getLastModified() {
+            return lastModified;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+
+    public record Stats(long memoryHits, long diskHits, long misses, long evictions, long revalidations, int memoryPages) {
+        public long hits() {
+            return memoryHits + diskHits;
+        }
+    }
+}
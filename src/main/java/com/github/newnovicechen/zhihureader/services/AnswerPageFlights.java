@@ -0,0 +1,215 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.utils.Futures;
+import com.github.newnovicechen.zhihureader.utils.RequestGroup;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 合并同一页回答的并发加载（single-flight）：切换模式、重复点击同一个问题和预取可能同时请求同一页，
+ * 第一个调用方发起加载，之后到达的调用方加入进行中的加载，共享同一组请求和结果。
+ * <p>
+ * 加载使用自己的 {@link RequestGroup}。每个调用方拿到的是自己的 future，取消自己的 group 或 future
+ * 时立即以 {@link CancellationException} 完成；所有调用方都离开后才取消加载本身。
+ * 逐个回答的回调会先补发已经就绪的回答，再按顺序接收后续的回答。回调不在任何锁内执行，
+ * 一个调用方的回调（例如解析正文）很慢时，不会挡住其他调用方加入或者加载继续推送回答。
+ * <p>
+ * 加入和离开只有 {@link ConcurrentHashMap#compute} 的分段锁和一次 CAS，不同页面之间不会互相阻塞。
+ */
+final class AnswerPageFlights {
+    /**
+     * 实际的加载过程，在 group 被取消时应尽快失败。
+     */
+    interface Loader {
+        CompletableFuture<List<Answer>> load(@NotNull RequestGroup group, @NotNull Consumer<Answer> onAnswer);
+    }
+
+    /**
+     * 离线下载不使用离线内容代替失败的请求，和普通加载分开合并。
+     */
+    record Key(String questionId, int offset, boolean offlineFallback) {
+    }
+
+    private final ConcurrentHashMap<Key, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 加载一页回答，同一页已经在加载时加入它。
+     */
+    CompletableFuture<List<Answer>> load(@NotNull Key key, @NotNull RequestGroup group, @Nullable Consumer<Answer> onAnswer,
+                                         @NotNull Loader loader) {
+        if (group.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("请求已取消"));
+        }
+        Flight[] created = new Flight[1];
+        Flight flight = flights.compute(key, (k, existing) -> {
+            if (existing != null && existing.tryJoin()) {
+                return existing;
+            }
+            created[0] = new Flight(k);
+            return created[0];
+        });
+        if (flight == created[0]) {
+            flight.start(loader);
+        }
+
+        // 先订阅再关联结果，加入已经完成的加载时也能收到补发的回答；调用方取消后不再收到回调
+        CompletableFuture<List<Answer>> waiter = new CompletableFuture<>();
+        Flight.Subscriber listener = onAnswer == null ? null : flight.new Subscriber(answer -> {
+            if (!group.isCancelled() && !waiter.isCompletedExceptionally()) {
+                onAnswer.accept(answer);
+            }
+        });
+        if (listener != null) {
+            flight.subscribe(listener);
+        }
+        flight.result.whenComplete((answers, error) -> {
+            if (error != null) {
+                waiter.completeExceptionally(Futures.unwrap(error));
+            } else {
+                waiter.complete(answers);
+            }
+        });
+        Runnable cancelWait = () -> waiter.completeExceptionally(new CancellationException("请求已取消"));
+        group.onCancel(cancelWait);
+        waiter.whenComplete((answers, error) -> {
+            group.removeOnCancel(cancelWait);
+            if (listener != null) {
+                flight.unsubscribe(listener);
+            }
+            flight.leave();
+        });
+        return waiter;
+    }
+
+    @TestOnly
+    int inFlightCount() {
+        return flights.size();
+    }
+
+    private final class Flight {
+        private final Key key;
+        private final RequestGroup group = new RequestGroup();
+        private final CompletableFuture<List<Answer>> result = new CompletableFuture<>();
+        // 正在等待的调用方数量，降到 0 之后不能再加入
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        // 以下由 this 保护
+        private final List<Answer> delivered = new ArrayList<>();
+        private final List<Subscriber> listeners = new ArrayList<>();
+
+        Flight(Key key) {
+            this.key = key;
+        }
+
+        void start(Loader loader) {
+            CompletableFuture<List<Answer>> loading;
+            try {
+                loading = loader.load(group, this::deliver);
+            } catch (RuntimeException e) {
+                loading = CompletableFuture.failedFuture(e);
+            }
+            loading.whenComplete((answers, error) -> {
+                flights.remove(key, this);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(answers);
+                }
+            });
+        }
+
+        boolean tryJoin() {
+            while (true) {
+                int n = waiters.get();
+                if (n == 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // 最后一个调用方离开时加载还没完成，说明没有人需要这个结果了
+        void leave() {
+            if (waiters.decrementAndGet() == 0 && !result.isDone()) {
+                flights.remove(key, this);
+                group.cancel();
+            }
+        }
+
+        void subscribe(Subscriber listener) {
+            synchronized (this) {
+                listeners.add(listener);
+            }
+            listener.drain();
+        }
+
+        synchronized void unsubscribe(Subscriber listener) {
+            listener.removed = true;
+            listeners.remove(listener);
+        }
+
+        private void deliver(Answer answer) {
+            List<Subscriber> snapshot;
+            synchronized (this) {
+                delivered.add(answer);
+                snapshot = new ArrayList<>(listeners);
+            }
+            for (Subscriber listener : snapshot) {
+                listener.drain();
+            }
+        }
+
+        /**
+         * 一个调用方的回调。每次 drain 在锁内复制还没发给它的回答，在锁外回调；
+         * 同一时间只有一个线程在给它回调，补发和后续回答之间不会乱序或重复。
+         */
+        final class Subscriber {
+            private final Consumer<Answer> consumer;
+            private final AtomicInteger pendingDrains = new AtomicInteger();
+            private volatile boolean removed;
+            // 只由正在 drain 的线程访问
+            private int sent;
+
+            Subscriber(Consumer<Answer> consumer) {
+                this.consumer = consumer;
+            }
+
+            void drain() {
+                if (pendingDrains.getAndIncrement() != 0) {
+                    return; // 正在回调的线程会接着发出新的回答
+                }
+                int missed = 1;
+                do {
+                    List<Answer> batch;
+                    synchronized (Flight.this) {
+                        batch = new ArrayList<>(delivered.subList(sent, delivered.size()));
+                    }
+                    try {
+                        for (Answer answer : batch) {
+                            if (removed) {
+                                break;
+                            }
+                            sent++;
+                            consumer.accept(answer);
+                        }
+                    } catch (RuntimeException | Error e) {
+                        pendingDrains.set(0); // 回调抛出异常时不能让后续回答再也发不出去
+                        throw e;
+                    }
+                    missed = pendingDrains.addAndGet(-missed);
+                } while (missed != 0);
+            }
+        }
+    }
+}
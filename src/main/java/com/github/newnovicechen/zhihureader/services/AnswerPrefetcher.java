@@ -0,0 +1,102 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.utils.RequestGroup;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台预取回答页，结果写入 {@link AnswerPageCache}，之后翻页或打开问题时可以直接命中缓存。
+ * <p>
+ * 预取任务在一个并发数受限的低优先级队列中执行，不会和前台加载抢占太多连接；
+ * 切换问题时调用 {@link #cancelAll()} 丢弃还没完成的预取。
+ */
+public final class AnswerPrefetcher {
+    private static final Logger LOG = Logger.getInstance(AnswerPrefetcher.class);
+    // 同时进行的预取任务数
+    private static final int PREFETCH_BUDGET = 2;
+
+    private final ZhihuService service;
+    private final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Zhihu Answer Prefetch", PREFETCH_BUDGET);
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile RequestGroup requests = new RequestGroup();
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    AnswerPrefetcher(ZhihuService service) {
+        this.service = service;
+    }
+
+    /**
+     * 当前页渲染完成后预取同一问题的下一页。
+     */
+    public void prefetchNextPage(String questionId, int offset) {
+        schedule(questionId, offset + ZhihuService.ANSWER_PAGE_SIZE);
+    }
+
+    /**
+     * 预取推荐列表中前 count 个问题的第一页。
+     */
+    public void prefetchQuestions(List<Question> questions, int count) {
+        for (int i = 0; i < Math.min(count, questions.size()); i++) {
+            schedule(questions.get(i).getId(), 0);
+        }
+    }
+
+    /**
+     * 取消所有还没完成的预取，已经写入缓存的结果保留。
+     */
+    public void cancelAll() {
+        generation.incrementAndGet();
+        RequestGroup old = requests;
+        requests = new RequestGroup();
+        old.cancel();
+        synchronized (pending) {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+        scheduled.clear();
+    }
+
+    private void schedule(String questionId, int offset) {
+        if (!service.isCookieSetAndValid() || service.answerCache().containsFresh(questionId, offset)) {
+            return;
+        }
+        String key = questionId + "_" + offset;
+        if (!scheduled.add(key)) {
+            return;
+        }
+        int scheduledGeneration = generation.get();
+        RequestGroup group = requests;
+        Future<?> future = executor.submit(() -> {
+            try {
+                // 排队期间已经被取消，或者前台已经加载过这一页
+                if (generation.get() != scheduledGeneration || service.answerCache().containsFresh(questionId, offset)) {
+                    return;
+                }
+                service.zhihuAnswer(questionId, offset, group);
+            } catch (CancellationException ignored) {
+                // 切换了问题，预取被取消
+            } catch (Exception e) {
+                LOG.debug("预取回答失败: " + key + ", " + e.getMessage());
+            } finally {
+                scheduled.remove(key);
+            }
+        });
+        synchronized (pending) {
+            pending.removeIf(Future::isDone);
+            pending.add(future);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.utils.HttpEngine;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 回答中图片的加载器，供 HTML 模式的图片视图使用。
+ * <p>
+ * 图片通过共享的 {@link HttpEngine} 客户端在后台线程下载，按显示宽度降采样解码后放进
+ * 按字节数限制大小的内存 LRU；下载到的原始数据同时写入磁盘缓存，下次不需要再请求。
+ * 磁盘缓存也有字节数上限，超出时按文件修改时间淘汰最久未使用的图片，读取命中时会更新修改时间。
+ * 同一张图片同时只会有一个加载任务。
+ */
+public final class ImageLoader {
+    private static final Logger LOG = Logger.getInstance(ImageLoader.class);
+    private static final long DEFAULT_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_DISK_BUDGET_BYTES = 256L * 1024 * 1024;
+    private static final int LOAD_PARALLELISM = 4;
+
+    private static volatile ImageLoader shared;
+
+    private final @Nullable Path diskDir;
+    private final long memoryBudgetBytes;
+    private final long diskBudgetBytes;
+    // 磁盘缓存的总字节数，第一次写入时扫描目录得到，-1 表示还没有扫描；由 diskLock 保护
+    private long diskBytes = -1;
+    private final Object diskLock = new Object();
+    private final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Zhihu Image Loader", LOAD_PARALLELISM);
+    // 访问顺序的 LinkedHashMap 作为 LRU，总字节数超出预算时淘汰最久未使用的图片
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private final Map<String, CompletableFuture<BufferedImage>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong downloads = new AtomicLong();
+
+    /**
+     * @param diskDir           磁盘缓存目录，为 null 时只使用内存缓存
+     * @param memoryBudgetBytes 内存中解码后图片的总字节数上限
+     */
+    public ImageLoader(@Nullable Path diskDir, long memoryBudgetBytes) {
+        this(diskDir, memoryBudgetBytes, DEFAULT_DISK_BUDGET_BYTES);
+    }
+
+    /**
+     * @param diskBudgetBytes 磁盘缓存的总字节数上限
+     */
+    public ImageLoader(@Nullable Path diskDir, long memoryBudgetBytes, long diskBudgetBytes) {
+        this.diskDir = diskDir;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.diskBudgetBytes = diskBudgetBytes;
+    }
+
+    /**
+     * 所有项目共用的加载器，磁盘目录位于 IDE system 目录下。
+     */
+    public static ImageLoader shared() {
+        ImageLoader l = shared;
+        if (l == null) {
+            synchronized (ImageLoader.class) {
+                l = shared;
+                if (l == null) {
+                    Path dir = Paths.get(PathManager.getSystemPath(), "zhihu-reader", "images");
+                    l = new ImageLoader(dir, DEFAULT_MEMORY_BUDGET_BYTES);
+                    shared = l;
+                }
+            }
+        }
+        return l;
+    }
+
+    /**
+     * 内存中已经解码好的图片，没有时返回 null，不会发起加载。
+     */
+    public @Nullable BufferedImage getCached(@NotNull String url, int maxWidth) {
+        synchronized (memory) {
+            return memory.get(key(url, maxWidth));
+        }
+    }
+
+    /**
+     * 加载图片并缩小到不超过 maxWidth 的宽度。图片无法下载或解码时，future 以异常结束。
+     */
+    public CompletableFuture<BufferedImage> load(@NotNull String url, int maxWidth) {
+        String key = key(url, maxWidth);
+        BufferedImage cached = getCached(url, maxWidth);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        executor.execute(() -> {
+            try {
+                BufferedImage image = decode(readBytes(url), maxWidth);
+                remember(key, image);
+                loading.remove(key, future);
+                future.complete(image);
+            } catch (Throwable e) {
+                loading.remove(key, future);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    public long getDownloadCount() {
+        return downloads.get();
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+        if (diskDir != null && Files.isDirectory(diskDir)) {
+            synchronized (diskLock) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir, "*.img")) {
+                    for (Path file : files) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("清理图片缓存失败", e);
+                }
+                diskBytes = -1;
+            }
+        }
+    }
+
+    private static String key(String url, int maxWidth) {
+        return maxWidth + "@" + url;
+    }
+
+    private void remember(String key, BufferedImage image) {
+        synchronized (memory) {
+            BufferedImage old = memory.put(key, image);
+            if (old != null) {
+                memoryBytes -= sizeOf(old);
+            }
+            memoryBytes += sizeOf(image);
+            Iterator<BufferedImage> it = memory.values().iterator();
+            while (memoryBytes > memoryBudgetBytes && it.hasNext()) {
+                BufferedImage eldest = it.next();
+                // 刚放进去的图片总是保留，即使它本身超出预算
+                if (eldest == image) {
+                    break;
+                }
+                memoryBytes -= sizeOf(eldest);
+                it.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    // 先查磁盘缓存，没有再下载，下载的原始数据写回磁盘
+    private byte[] readBytes(String url) {
+        Path file = diskDir == null ? null : diskDir.resolve(fileName(url));
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                byte[] bytes = Files.readAllBytes(file);
+                // 修改时间作为最近使用时间，淘汰时先删最久没用过的
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return bytes;
+            } catch (IOException e) {
+                LOG.warn("读取图片缓存失败: " + file, e);
+            }
+        }
+        byte[] bytes = download(url);
+        if (file != null) {
+            try {
+                Files.createDirectories(diskDir);
+                Path tmp = Files.createTempFile(diskDir, "img", ".tmp");
+                Files.write(tmp, bytes);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                afterDiskWrite(bytes.length);
+            } catch (IOException e) {
+                LOG.warn("写入图片缓存失败", e);
+            }
+        }
+        return bytes;
+    }
+
+    private void afterDiskWrite(long written) throws IOException {
+        synchronized (diskLock) {
+            if (diskBytes < 0) {
+                diskBytes = trimDisk(Long.MAX_VALUE); // 只统计大小，新写入的文件已经算在里面
+            } else {
+                diskBytes += written;
+            }
+            if (diskBytes > diskBudgetBytes) {
+                // 删到上限的九成，避免之后每次写入都扫描目录
+                diskBytes = trimDisk(diskBudgetBytes / 10 * 9);
+            }
+        }
+    }
+
+    // 按修改时间从旧到新删除图片，直到总字节数不超过 target，返回剩下的总字节数
+    private long trimDisk(long target) throws IOException {
+        record CachedFile(Path path, long size, long lastUsed) {
+        }
+        List<CachedFile> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Objects.requireNonNull(diskDir), "*.img")) {
+            for (Path path : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    files.add(new CachedFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    total += attributes.size();
+                } catch (NoSuchFileException ignored) {
+                    // 另一个线程刚刚删掉
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(CachedFile::lastUsed));
+        for (CachedFile file : files) {
+            if (total <= target) {
+                break;
+            }
+            Files.deleteIfExists(file.path());
+            total -= file.size();
+        }
+        return total;
+    }
+
+    private byte[] download(String url) {
+        Request request = new Request.Builder().url(url).get().build();
+        downloads.incrementAndGet();
+        try (Response response = HttpEngine.client().newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IllegalStateException("图片下载失败: " + response.code());
+            }
+            return body.bytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("图片下载失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解码时按整数倍跳过像素，避免完整解码大图；再把结果平滑缩放到 maxWidth。
+     */
+    static BufferedImage decode(byte[] bytes, int maxWidth) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IllegalStateException("不支持的图片格式");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, width / maxWidth);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return scaleToWidth(reader.read(0, param), maxWidth);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("图片解码失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static BufferedImage scaleToWidth(BufferedImage image, int maxWidth) {
+        if (image.getWidth() <= maxWidth) {
+            return image;
+        }
+        int height = Math.max(1, (int) ((long) image.getHeight() * maxWidth / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, maxWidth, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            return String.format("%040x", new BigInteger(1, digest)) + ".img";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
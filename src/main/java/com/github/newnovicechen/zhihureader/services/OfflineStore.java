@@ -0,0 +1,613 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 离线阅读用的本地存储：每个取到的问题和回答页都追加写入一个文件，没有网络时从这里读取。
+ * 它同时是 {@link AnswerPageCache} 的磁盘层，回答页只在这里保存一份，连同 ETag/Last-Modified 和获取时间。
+ * <p>
+ * 文件只追加，不原地修改。每条记录是 [长度][CRC32][类型][内容]，回答页的内容以 (questionId, offset)
+ * 开头，接着是获取时间和校验信息，后面是 Deflate 压缩的回答 HTML。打开时只读取每条记录的键，在内存中建立
+ * (questionId, offset) 到文件位置的索引，同一个键以最后写入的记录为准。写到一半的尾部记录在打开时截掉。
+ * 被覆盖的旧记录超过一半时，打开时重写一次文件，只保留有效记录。
+ * <p>
+ * 文件大小超过上限时按写入顺序淘汰最早保存的回答页（重新保存的页算作最新），直到有效记录降到上限的四分之三，
+ * 然后重写文件。问题标题很小，不参与淘汰。
+ * <p>
+ * 重写文件要复制上百 MB，在后台线程上进行，复制时不持有锁，读写照常进行；复制期间追加的记录在最后持有锁时
+ * 接到新文件末尾，再替换原文件。
+ */
+public final class OfflineStore implements Closeable {
+    private static final Logger LOG = Logger.getInstance(OfflineStore.class);
+    private static final int MAGIC = 0x5A485253; // "ZHRS"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final byte TYPE_QUESTION = 1;
+    private static final byte TYPE_PAGE = 3;
+    private static final long COMPACT_MIN_GARBAGE_BYTES = 4L * 1024 * 1024;
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    // 共用存储打开失败后，隔这么久才再次尝试，避免每次加载都重复 I/O 并刷屏日志
+    private static final long REOPEN_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final ExecutorService COMPACTOR =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Zhihu Offline Store Compaction", 1);
+
+    private static volatile @Nullable OfflineStore shared;
+    // 下次允许尝试打开共用存储的时间，由类锁保护
+    private static long nextOpenAttempt;
+
+    private final Path file;
+    private final long maxBytes;
+    private FileChannel channel;
+    // (questionId, offset) -> 记录在文件中的位置
+    private final Map<PageKey, Long> pages = new HashMap<>();
+    // 保持第一次出现的顺序，离线时按这个顺序列出问题
+    private final LinkedHashMap<String, Question> questions = new LinkedHashMap<>();
+    private long garbageBytes;
+    private long evictions;
+    private boolean closed;
+    // 最近提交的后台重写，以及它是否还没开始读取索引，由 this 保护
+    private @Nullable Future<?> compaction;
+    private boolean compactionQueued;
+    // 同一时间只有一个重写，先取这个锁再取 this
+    private final Object compactLock = new Object();
+
+    /**
+     * 打开或创建存储文件，并读取索引。
+     */
+    public OfflineStore(@NotNull Path file) throws IOException {
+        this(file, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes 文件大小上限，超过后淘汰最早保存的回答页
+     */
+    public OfflineStore(@NotNull Path file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = open(file);
+        loadIndex();
+        synchronized (this) {
+            if (channel.size() > maxBytes) {
+                evictOldest();
+            } else if (garbageBytes > COMPACT_MIN_GARBAGE_BYTES && garbageBytes > channel.size() / 2) {
+                scheduleCompaction();
+            }
+        }
+    }
+
+    /**
+     * 所有项目共用的存储，位于 IDE system 目录下。打开失败时返回 null，离线功能不可用但不影响在线阅读；
+     * 失败后 {@link #REOPEN_BACKOFF_MILLIS} 内不再尝试打开，直接返回 null。
+     */
+    public static @Nullable OfflineStore shared() {
+        OfflineStore s = shared;
+        if (s == null) {
+            synchronized (OfflineStore.class) {
+                s = shared;
+                if (s == null && System.currentTimeMillis() >= nextOpenAttempt) {
+                    Path path = Paths.get(PathManager.getSystemPath(), "zhihu-reader", "offline", "store.dat");
+                    try {
+                        s = new OfflineStore(path);
+                        shared = s;
+                    } catch (IOException e) {
+                        nextOpenAttempt = System.currentTimeMillis() + REOPEN_BACKOFF_MILLIS;
+                        LOG.warn("打开离线存储失败，" + TimeUnit.MILLISECONDS.toMinutes(REOPEN_BACKOFF_MILLIS) + " 分钟后重试: " + path, e);
+                    }
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 关闭共用的存储，插件卸载时调用。
+     */
+    public static void closeShared() {
+        synchronized (OfflineStore.class) {
+            OfflineStore s = shared;
+            shared = null;
+            nextOpenAttempt = 0;
+            if (s != null) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * 记录问题标题。标题没有变化时不写入。
+     */
+    public synchronized void putQuestion(@NotNull Question question) {
+        Question known = questions.get(question.getId());
+        if (known != null && Objects.equals(known.getTitle(), question.getTitle())) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(question.getId());
+            writeString(out, question.getTitle() == null ? "" : question.getTitle());
+            append(TYPE_QUESTION, bytes.toByteArray());
+            if (known != null) {
+                garbageBytes += RECORD_HEADER_SIZE; // 旧的问题记录很小，只粗略计入
+            }
+            questions.put(question.getId(), new Question(question.getId(), question.getTitle()));
+        } catch (IOException e) {
+            LOG.warn("写入离线问题失败", e);
+        }
+    }
+
+    /**
+     * 保存一页回答，覆盖同一个 (questionId, offset) 之前保存的内容。
+     */
+    public void putPage(@NotNull String questionId, int offset, @NotNull List<Answer> answers) {
+        putPage(questionId, offset, new AnswerPageCache.Page(answers, null, null, System.currentTimeMillis()));
+    }
+
+    /**
+     * 保存一页回答及其校验信息，覆盖同一个 (questionId, offset) 之前保存的内容。
+     */
+    public void putPage(@NotNull String questionId, int offset, @NotNull AnswerPageCache.Page page) {
+        byte[] payload;
+        try {
+            payload = encodePage(questionId, offset, page);
+        } catch (IOException e) {
+            LOG.warn("编码离线回答页失败", e);
+            return;
+        }
+        synchronized (this) {
+            try {
+                long position = append(TYPE_PAGE, payload);
+                Long old = pages.put(new PageKey(questionId, offset), position);
+                if (old != null) {
+                    garbageBytes += recordSize(old);
+                }
+                if (channel.size() > maxBytes) {
+                    evictOldest();
+                }
+            } catch (IOException e) {
+                LOG.warn("写入离线回答页失败", e);
+            }
+        }
+    }
+
+    /**
+     * 读取保存的回答页，没有保存或者记录损坏时返回 null。
+     */
+    public @Nullable List<Answer> getPage(@NotNull String questionId, int offset) {
+        AnswerPageCache.Page page = getCachedPage(questionId, offset);
+        return page == null ? null : page.getAnswers();
+    }
+
+    /**
+     * 读取保存的回答页及其获取时间和校验信息，没有保存或者记录损坏时返回 null。
+     */
+    public @Nullable AnswerPageCache.Page getCachedPage(@NotNull String questionId, int offset) {
+        Record record;
+        synchronized (this) {
+            Long position = pages.get(new PageKey(questionId, offset));
+            if (position == null) {
+                return null;
+            }
+            try {
+                record = readRecord(position);
+            } catch (IOException e) {
+                LOG.warn("读取离线回答页失败: " + questionId + " offset " + offset, e);
+                return null;
+            }
+        }
+        if (record == null) {
+            return null;
+        }
+        // 解压在锁外进行，不阻塞其他读写
+        try {
+            return decodePage(record.payload);
+        } catch (IOException e) {
+            LOG.warn("解码离线回答页失败: " + questionId + " offset " + offset, e);
+            return null;
+        }
+    }
+
+    public synchronized boolean containsPage(@NotNull String questionId, int offset) {
+        return pages.containsKey(new PageKey(questionId, offset));
+    }
+
+    /**
+     * 保存了该问题的多少页回答。
+     */
+    public synchronized int pageCount(@NotNull String questionId) {
+        int count = 0;
+        for (PageKey key : pages.keySet()) {
+            if (key.questionId.equals(questionId)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * 至少保存了一页回答的问题，按第一次保存的顺序排列，没有记录标题的问题不列出。
+     */
+    public synchronized List<Question> questionsWithPages() {
+        Set<String> withPages = new HashSet<>();
+        for (PageKey key : pages.keySet()) {
+            withPages.add(key.questionId);
+        }
+        List<Question> result = new ArrayList<>();
+        for (Question question : questions.values()) {
+            if (withPages.contains(question.getId())) {
+                result.add(new Question(question.getId(), question.getTitle()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 文件大小（字节）。
+     */
+    public synchronized long sizeBytes() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * 因为超过大小上限而淘汰的回答页数。
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * 重写存储文件，只保留每个问题和每页回答最新的记录。复制记录时不持有锁，只在开始和最后替换文件时短暂持有。
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+            List<Question> questionSnapshot;
+            List<Long> positions;
+            FileChannel source;
+            long end;
+            long garbageAtStart;
+            synchronized (this) {
+                if (closed) return;
+                // 从这里开始的变化由下一次重写处理
+                compactionQueued = false;
+                questionSnapshot = new ArrayList<>(questions.values());
+                positions = new ArrayList<>(pages.values());
+                source = channel;
+                end = channel.size();
+                garbageAtStart = garbageBytes;
+            }
+            // 原位置 -> 新文件中的位置
+            Map<Long, Long> moved = new HashMap<>();
+            boolean replaced = false;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                out.write(fileHeader());
+                for (Question question : questionSnapshot) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    DataOutputStream data = new DataOutputStream(bytes);
+                    data.writeUTF(question.getId());
+                    writeString(data, question.getTitle() == null ? "" : question.getTitle());
+                    writeRecord(out, TYPE_QUESTION, bytes.toByteArray());
+                }
+                // 记录只追加不修改，不持有锁按位置读取；读写线程此时只会在 end 之后追加
+                for (long position : positions) {
+                    ByteBuffer record = ByteBuffer.allocate((int) recordSize(source, position));
+                    readFully(source, record, position);
+                    moved.put(position, out.position());
+                    record.flip();
+                    while (record.hasRemaining()) out.write(record);
+                }
+                synchronized (this) {
+                    if (closed) return;
+                    // 复制期间追加的记录原样接到末尾，其中被覆盖的部分仍然计入垃圾
+                    long tail = out.position();
+                    long size = channel.size();
+                    for (long copied = end; copied < size; ) {
+                        long n = channel.transferTo(copied, size - copied, out);
+                        if (n <= 0) throw new EOFException("离线存储在重写时被截断");
+                        copied += n;
+                    }
+                    out.force(true);
+                    out.close(); // 有的系统上不能移动打开着的文件
+                    Map<PageKey, Long> relocated = new HashMap<>();
+                    for (Map.Entry<PageKey, Long> entry : pages.entrySet()) {
+                        long position = entry.getValue();
+                        relocated.put(entry.getKey(), position >= end ? tail + position - end : moved.get(position));
+                    }
+                    channel.close();
+                    try {
+                        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        replaced = true;
+                    } finally {
+                        // 移动失败时原文件没有变化，重新打开后原来的位置仍然有效
+                        channel = open(file);
+                    }
+                    pages.clear();
+                    pages.putAll(relocated);
+                    garbageBytes -= garbageAtStart;
+                }
+            } finally {
+                if (!replaced) {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("关闭离线存储失败", e);
+        }
+    }
+
+    /**
+     * 等待已经提交的后台重写完成。
+     */
+    @TestOnly
+    void awaitCompaction() throws ExecutionException, InterruptedException {
+        while (true) {
+            Future<?> f;
+            synchronized (this) {
+                f = compaction;
+            }
+            if (f == null) {
+                return;
+            }
+            f.get();
+            synchronized (this) {
+                if (compaction == f) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // 记录按写入顺序追加，位置越小越早保存；淘汰到有效记录不超过上限的四分之三，避免每次写入都重写文件。
+    // 淘汰只从索引中去掉，文件在后台重写
+    private void evictOldest() throws IOException {
+        long target = maxBytes / 4 * 3;
+        long live = channel.size() - garbageBytes;
+        // 后台重写完成之前文件仍然超过上限，这时淘汰过的记录已经计入垃圾，不用再排序
+        if (live > target) {
+            List<Map.Entry<PageKey, Long>> byAge = new ArrayList<>(pages.entrySet());
+            byAge.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<PageKey, Long> entry : byAge) {
+                if (live <= target) {
+                    break;
+                }
+                long size = recordSize(entry.getValue());
+                live -= size;
+                garbageBytes += size;
+                pages.remove(entry.getKey());
+                evictions++;
+            }
+        }
+        scheduleCompaction();
+    }
+
+    // 调用时持有 this；已经有重写在排队、还没开始读取索引时不再提交
+    private void scheduleCompaction() {
+        if (closed || compactionQueued) {
+            return;
+        }
+        compactionQueued = true;
+        compaction = COMPACTOR.submit(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOG.warn("重写离线存储失败", e);
+            }
+        });
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer fileHeader() {
+        return ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+    }
+
+    // 顺序读取每条记录的键建立索引，遇到不完整的记录时从这里截断
+    private void loadIndex() throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_SIZE) {
+            channel.truncate(0);
+            channel.write(fileHeader(), 0);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("不是离线存储文件或版本不兼容: " + file);
+        }
+        long position = FILE_HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            readFully(channel, recordHeader, position);
+            recordHeader.flip();
+            int length = recordHeader.getInt();
+            recordHeader.getInt(); // CRC 在读取内容时校验
+            byte type = recordHeader.get();
+            long end = position + RECORD_HEADER_SIZE + length;
+            if (length < 0 || end > size) {
+                break;
+            }
+            // 键都在内容的开头，只读取这一小段
+            ByteBuffer head = ByteBuffer.allocate(Math.min(length, 64 * 1024));
+            readFully(channel, head, position + RECORD_HEADER_SIZE);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(head.array(), 0, head.limit()));
+            try {
+                if (type == TYPE_QUESTION) {
+                    if (length > head.limit()) break; // 问题记录不会这么大
+                    String id = in.readUTF();
+                    Question old = questions.put(id, new Question(id, readString(in)));
+                    if (old != null) garbageBytes += RECORD_HEADER_SIZE;
+                } else if (type == TYPE_PAGE) {
+                    PageKey key = new PageKey(in.readUTF(), in.readInt());
+                    Long old = pages.put(key, position);
+                    if (old != null) garbageBytes += recordSize(old);
+                } else {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            position = end;
+        }
+        if (position < size) {
+            LOG.warn("离线存储尾部有 " + (size - position) + " 字节不完整的记录，已截断");
+            channel.truncate(position);
+        }
+    }
+
+    private long append(byte type, byte[] payload) throws IOException {
+        long position = channel.size();
+        channel.position(position);
+        writeRecord(channel, type, payload);
+        return position;
+    }
+
+    private static void writeRecord(FileChannel out, byte type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(type)
+                .put(payload)
+                .flip();
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+
+    private long recordSize(long position) throws IOException {
+        return recordSize(channel, position);
+    }
+
+    private static long recordSize(FileChannel channel, long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, position);
+        return RECORD_HEADER_SIZE + length.flip().getInt();
+    }
+
+    // 读取并校验一条记录，CRC 不一致时返回 null
+    private @Nullable Record readRecord(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(channel, header, position);
+        header.flip();
+        int length = header.getInt();
+        int expected = header.getInt();
+        byte type = header.get();
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, position + RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload.array());
+        if ((int) crc.getValue() != expected) {
+            LOG.warn("离线存储记录校验失败，位置 " + position);
+            return null;
+        }
+        return new Record(type, payload.array());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+    }
+
+    private static byte[] encodePage(String questionId, int offset, AnswerPageCache.Page page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(questionId);
+        out.writeInt(offset);
+        out.writeLong(page.getFetchedAt());
+        writeNullableUTF(out, page.getEtag());
+        writeNullableUTF(out, page.getLastModified());
+        DataOutputStream body = new DataOutputStream(new DeflaterOutputStream(out));
+        List<Answer> answers = page.getAnswers();
+        body.writeInt(answers.size());
+        for (Answer answer : answers) {
+            writeString(body, answer.getAuthorName() == null ? "" : answer.getAuthorName());
+            writeString(body, answer.getAnswerContent() == null ? "" : answer.getAnswerContent());
+        }
+        body.close();
+        return bytes.toByteArray();
+    }
+
+    private static AnswerPageCache.Page decodePage(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readUTF(); // questionId
+        in.readInt(); // offset
+        long fetchedAt = in.readLong();
+        String etag = readNullableUTF(in);
+        String lastModified = readNullableUTF(in);
+        try (DataInputStream body = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)))) {
+            int count = body.readInt();
+            List<Answer> answers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                answers.add(new Answer(readString(body), readString(body)));
+            }
+            return new AnswerPageCache.Page(answers, etag, lastModified, fetchedAt);
+        }
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, @Nullable String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static @Nullable String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // writeUTF 限制 64KB，回答正文可能更长
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record PageKey(String questionId, int offset) {
+    }
+
+    private record Record(byte type, byte[] payload) {
+    }
+}
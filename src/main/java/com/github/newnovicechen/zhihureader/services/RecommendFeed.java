@@ -0,0 +1,74 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.model.FeedPage;
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.utils.RequestGroup;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 推荐流的翻页游标：记录 paging.next，并按问题 id 去重，同一个问题在列表中只出现一次。
+ * <p>
+ * 知乎的问题 id 是数字，用 long 的开放寻址集合保存，几千条记录也只占很少的内存；
+ * 个别非数字 id 放在普通的 HashSet 中。
+ */
+public final class RecommendFeed {
+    private final ZhihuService service;
+    private final LongOpenHashSet seenIds = new LongOpenHashSet();
+    private final Set<String> seenOtherIds = new HashSet<>();
+    private @Nullable String nextUrl;
+    private boolean started;
+    private boolean end;
+
+    RecommendFeed(ZhihuService service) {
+        this.service = service;
+    }
+
+    public synchronized boolean hasMore() {
+        return !end;
+    }
+
+    /**
+     * 加载下一页，只返回之前没有出现过的问题。已经到底时返回空列表。
+     */
+    public List<Question> loadMore(@NotNull RequestGroup group) {
+        String url;
+        synchronized (this) {
+            if (end) {
+                return List.of();
+            }
+            url = started ? nextUrl : null;
+        }
+        FeedPage page = service.zhihuRecommendPage(url, group);
+        synchronized (this) {
+            started = true;
+            nextUrl = page.getNextUrl();
+            end = page.isEnd();
+            List<Question> fresh = new ArrayList<>(page.getQuestions().size());
+            for (Question question : page.getQuestions()) {
+                if (markSeen(question.getId())) {
+                    fresh.add(question);
+                }
+            }
+            return fresh;
+        }
+    }
+
+    public synchronized int size() {
+        return seenIds.size() + seenOtherIds.size();
+    }
+
+    private boolean markSeen(String id) {
+        try {
+            return seenIds.add(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return seenOtherIds.add(id);
+        }
+    }
+}
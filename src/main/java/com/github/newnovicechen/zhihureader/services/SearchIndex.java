@@ -0,0 +1,864 @@
+package com.github.newnovicechen.zhihureader.services;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.utils.AnswerContent;
+import com.github.newnovicechen.zhihureader.utils.SearchTokenizer;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 读过的问题和回答的全文索引，用于在工具窗口中搜索标题、作者和回答正文。
+ * <p>
+ * 每个问题标题是一个文档，每个回答（作者名加上纯文本正文）是一个文档，文档编号按加入顺序递增。
+ * 文本由 {@link SearchTokenizer} 切分成词项哈希，倒排表以文档编号的差值变长编码。
+ * <p>
+ * 新加入的文档先记在内存中，积累到一定数量后写成一个只读的段文件，段文件通过内存映射读取，
+ * 不整体加载到堆上。段的数量超过上限时合并成一个。文档属于哪个问题、哪一页记录在追加写入的
+ * docs.dat 中；内存中还没写成段的文档在重新打开时从这里找到，再从 {@link PageSource} 取回内容重新索引。
+ * 同一页回答内容变化后重新加入时，旧的文档只标记为删除，查询时过滤掉。
+ * <p>
+ * 每个回答的作者和纯文本正文在加入时压缩后追加到 texts.dat，位置记在 docs.dat 里。查询生成摘要时只读取命中的
+ * 那几个回答的文本，不需要从离线存储解码整页，也不需要重新解析 HTML。
+ */
+public final class SearchIndex implements Closeable {
+    private static final Logger LOG = Logger.getInstance(SearchIndex.class);
+    private static final int SEGMENT_MAGIC = 0x5A485349; // "ZHSI"
+    private static final int SEGMENT_VERSION = 1;
+    // magic, version, docStart, docEnd, termCount, termTableOffset
+    private static final int SEGMENT_HEADER_SIZE = 24;
+    // 词项哈希、倒排表位置、文档数
+    private static final int TERM_ENTRY_SIZE = 16;
+    private static final byte RECORD_QUESTION = 1;
+    private static final byte RECORD_PAGE = 2;
+    private static final int DEFAULT_FLUSH_DOCS = 5_000;
+    private static final int MAX_SEGMENTS = 8;
+    private static final int SNIPPET_RADIUS = 40;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("seg-(\\d+)-(\\d+)\\.idx");
+    private static final ExecutorService INDEXER =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Zhihu Search Index", 1);
+
+    private static volatile @Nullable SearchIndex shared;
+
+    /**
+     * 取回一页回答的原文，用于重新索引。
+     */
+    public interface PageSource {
+        @Nullable List<Answer> getPage(String questionId, int offset);
+    }
+
+    private final Path dir;
+    private final PageSource pageSource;
+    private final int flushDocs;
+    private final FileChannel docsChannel;
+    // 回答的作者和纯文本，追加写入；查询时不持有锁按位置读取
+    private final FileChannel textsChannel;
+
+    // 以下都由 this 保护
+    private final List<Block> blocks = new ArrayList<>(); // 按 firstDoc 递增
+    private final Map<String, Block> questionBlocks = new HashMap<>();
+    private final Map<PageKey, Block> pageBlocks = new HashMap<>();
+    private final List<Segment> segments = new ArrayList<>(); // 按 docStart 递增，首尾相接
+    private final Long2ObjectOpenHashMap<IntArrayList> delta = new Long2ObjectOpenHashMap<>();
+    private int deltaStart;
+    private int nextDoc;
+
+    public SearchIndex(@NotNull Path dir, @NotNull PageSource pageSource) throws IOException {
+        this(dir, pageSource, DEFAULT_FLUSH_DOCS);
+    }
+
+    /**
+     * @param flushDocs 内存中积累多少个文档后写成段文件
+     */
+    public SearchIndex(@NotNull Path dir, @NotNull PageSource pageSource, int flushDocs) throws IOException {
+        this.dir = dir;
+        this.pageSource = pageSource;
+        this.flushDocs = flushDocs;
+        Files.createDirectories(dir);
+        docsChannel = FileChannel.open(dir.resolve("docs.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        textsChannel = FileChannel.open(dir.resolve("texts.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadDocs();
+        loadSegments();
+        reindexPending();
+    }
+
+    /**
+     * 所有项目共用的索引，位于 IDE system 目录下，回答原文从共用的离线存储读取。打开失败时返回 null。
+     */
+    public static @Nullable SearchIndex shared() {
+        SearchIndex s = shared;
+        if (s == null) {
+            synchronized (SearchIndex.class) {
+                s = shared;
+                if (s == null) {
+                    Path path = Paths.get(PathManager.getSystemPath(), "zhihu-reader", "search");
+                    try {
+                        s = new SearchIndex(path, (questionId, offset) -> {
+                            OfflineStore store = OfflineStore.shared();
+                            return store == null ? null : store.getPage(questionId, offset);
+                        });
+                        shared = s;
+                    } catch (IOException e) {
+                        LOG.warn("打开搜索索引失败: " + path, e);
+                    }
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 把内存中的文档写成段文件并关闭共用的索引，插件卸载时调用。
+     */
+    public static void closeShared() {
+        synchronized (SearchIndex.class) {
+            SearchIndex s = shared;
+            shared = null;
+            if (s != null) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * 在后台线程上加入问题标题，加入顺序与调用顺序一致。
+     */
+    public void addQuestionAsync(@NotNull Question question) {
+        INDEXER.execute(() -> addQuestion(question));
+    }
+
+    /**
+     * 在后台线程上加入一页回答，转换纯文本和分词都不占用调用线程。
+     */
+    public void addPageAsync(@NotNull String questionId, int offset, @NotNull List<Answer> answers) {
+        List<Answer> copy = List.copyOf(answers);
+        INDEXER.execute(() -> addPage(questionId, offset, copy));
+    }
+
+    /**
+     * 加入问题标题。标题没有变化时什么也不做。
+     */
+    public synchronized void addQuestion(@NotNull Question question) {
+        String title = question.getTitle() == null ? "" : question.getTitle();
+        Block old = questionBlocks.get(question.getId());
+        if (old != null && title.equals(old.title)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(question.getId());
+            out.writeUTF(title);
+            appendRecord(RECORD_QUESTION, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warn("写入搜索索引失败", e);
+            return;
+        }
+        if (old != null) {
+            old.deleted = true;
+        }
+        Block block = new Block(nextDoc, 1, question.getId(), -1, 0, title);
+        addBlock(block);
+        indexDoc(block.firstDoc, terms(title));
+        nextDoc++;
+        maybeFlush();
+    }
+
+    /**
+     * 加入一页回答。同一页内容没有变化时什么也不做，变化时旧的文档被新的替换。
+     */
+    public void addPage(@NotNull String questionId, int offset, @NotNull List<Answer> answers) {
+        int hash = contentHash(answers);
+        synchronized (this) {
+            Block old = pageBlocks.get(new PageKey(questionId, offset));
+            if (old != null && old.contentHash == hash) {
+                return;
+            }
+        }
+        // 转换纯文本、分词和压缩比较耗时，不持有锁
+        long[][] docTerms = new long[answers.size()][];
+        byte[][] texts = new byte[answers.size()][];
+        try {
+            for (int i = 0; i < answers.size(); i++) {
+                Answer answer = answers.get(i);
+                String author = answer.getAuthorName() == null ? "" : answer.getAuthorName();
+                String plain = AnswerContent.of(answer, 0).plainText();
+                docTerms[i] = answerTerms(author, plain);
+                texts[i] = encodeText(author, plain);
+            }
+        } catch (IOException e) {
+            LOG.warn("写入搜索索引失败", e);
+            return;
+        }
+        synchronized (this) {
+            PageKey key = new PageKey(questionId, offset);
+            Block old = pageBlocks.get(key);
+            if (old != null && old.contentHash == hash) {
+                return;
+            }
+            long[] textPositions = new long[answers.size() + 1];
+            try {
+                // 先写文本再写记录，中途退出时 texts.dat 里只是多出没有引用的字节
+                textPositions[0] = textsChannel.size();
+                for (int i = 0; i < texts.length; i++) {
+                    writeFully(textsChannel, ByteBuffer.wrap(texts[i]), textPositions[i]);
+                    textPositions[i + 1] = textPositions[i] + texts[i].length;
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(questionId);
+                out.writeInt(offset);
+                out.writeInt(hash);
+                out.writeInt(answers.size());
+                out.writeLong(textPositions[0]);
+                for (byte[] text : texts) {
+                    out.writeInt(text.length);
+                }
+                appendRecord(RECORD_PAGE, bytes.toByteArray());
+            } catch (IOException e) {
+                LOG.warn("写入搜索索引失败", e);
+                return;
+            }
+            if (old != null) {
+                old.deleted = true;
+            }
+            Block block = new Block(nextDoc, answers.size(), questionId, offset, hash, null);
+            block.textPositions = textPositions;
+            addBlock(block);
+            for (long[] terms : docTerms) {
+                indexDoc(nextDoc++, terms);
+            }
+            maybeFlush();
+        }
+    }
+
+    /**
+     * 查找同时包含查询中所有词项的问题和回答。标题匹配的问题排在前面，其余按加入时间从新到旧排列。
+     */
+    public List<SearchHit> search(@NotNull String query, int limit) {
+        LongArrayList terms = new LongArrayList();
+        LongOpenHashSet seen = new LongOpenHashSet();
+        SearchTokenizer.tokenizeQuery(query, t -> {
+            if (seen.add(t)) terms.add(t);
+        });
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        List<Block> hitBlocks = new ArrayList<>();
+        IntArrayList hitDocs = new IntArrayList();
+        Map<String, String> hitTitles = new HashMap<>();
+        synchronized (this) {
+            int[] docs = null;
+            for (int i = 0; i < terms.size() && (docs == null || docs.length > 0); i++) {
+                int[] postings = postings(terms.getLong(i));
+                docs = docs == null ? postings : intersect(docs, postings);
+            }
+            // 问题标题在前，其余从新到旧
+            IntArrayList answersHits = new IntArrayList();
+            for (int i = docs.length - 1; i >= 0 && hitDocs.size() < limit; i--) {
+                Block block = blockOf(docs[i]);
+                if (block == null || block.deleted) continue;
+                if (block.offset < 0) {
+                    hitBlocks.add(block);
+                    hitDocs.add(docs[i]);
+                } else if (answersHits.size() < limit) {
+                    answersHits.add(docs[i]);
+                }
+            }
+            for (int i = 0; i < answersHits.size() && hitDocs.size() < limit; i++) {
+                hitBlocks.add(blockOf(answersHits.getInt(i)));
+                hitDocs.add(answersHits.getInt(i));
+            }
+            for (Block block : hitBlocks) {
+                Block question = questionBlocks.get(block.questionId);
+                hitTitles.put(block.questionId, question == null ? "" : question.title);
+            }
+        }
+        // 摘要从 texts.dat 读取命中的回答的纯文本，不持有锁
+        List<SearchHit> hits = new ArrayList<>(hitBlocks.size());
+        for (int i = 0; i < hitBlocks.size(); i++) {
+            Block block = hitBlocks.get(i);
+            String title = hitTitles.get(block.questionId);
+            if (block.offset < 0) {
+                hits.add(new SearchHit(block.questionId, title, -1, -1, "", title));
+                continue;
+            }
+            int answerIndex = hitDocs.getInt(i) - block.firstDoc;
+            String[] text = readText(block, answerIndex);
+            String author = text == null ? "" : text[0];
+            String snippet = text == null ? "" : snippet(text[1], query);
+            hits.add(new SearchHit(block.questionId, title, block.offset, answerIndex, author, snippet));
+        }
+        return hits;
+    }
+
+    /**
+     * 把内存中的文档写成段文件。
+     */
+    public synchronized void flush() throws IOException {
+        if (delta.isEmpty()) {
+            deltaStart = nextDoc;
+            return;
+        }
+        long[] terms = delta.keySet().toLongArray();
+        Arrays.sort(terms);
+        Path file = dir.resolve("seg-" + deltaStart + "-" + nextDoc + ".idx");
+        try (SegmentWriter writer = new SegmentWriter(file, deltaStart, nextDoc)) {
+            for (long term : terms) {
+                IntArrayList docs = delta.get(term);
+                writer.add(term, docs.elements(), docs.size());
+            }
+        }
+        segments.add(Segment.open(file));
+        delta.clear();
+        deltaStart = nextDoc;
+        if (segments.size() > MAX_SEGMENTS) {
+            merge();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            LOG.warn("写入搜索索引失败", e);
+        }
+        try {
+            docsChannel.close();
+            textsChannel.close();
+        } catch (IOException e) {
+            LOG.warn("关闭搜索索引失败", e);
+        }
+        segments.clear();
+    }
+
+    public synchronized int getDocumentCount() {
+        return nextDoc;
+    }
+
+    @TestOnly
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private static int contentHash(List<Answer> answers) {
+        int hash = 1;
+        for (Answer answer : answers) {
+            hash = 31 * hash + Objects.hashCode(answer.getAuthorName());
+            hash = 31 * hash + Objects.hashCode(answer.getAnswerContent());
+        }
+        return hash;
+    }
+
+    private static long[] answerTerms(String author, String plain) {
+        return terms(author + "\n" + plain);
+    }
+
+    private static byte[] encodeText(String author, String plain) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeUTF(author);
+            byte[] utf8 = plain.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        return bytes.toByteArray();
+    }
+
+    // 作者和纯文本；没有记录或者读取失败时返回 null，结果里不显示摘要
+    private @Nullable String[] readText(Block block, int answerIndex) {
+        long[] positions = block.textPositions;
+        if (positions == null || answerIndex + 1 >= positions.length) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (positions[answerIndex + 1] - positions[answerIndex]));
+        try {
+            readFully(textsChannel, buffer, positions[answerIndex]);
+            if (buffer.hasRemaining()) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(buffer.array())))) {
+                String author = in.readUTF();
+                byte[] utf8 = new byte[in.readInt()];
+                in.readFully(utf8);
+                return new String[]{author, new String(utf8, StandardCharsets.UTF_8)};
+            }
+        } catch (IOException e) {
+            LOG.debug("读取搜索摘要失败", e);
+            return null;
+        }
+    }
+
+    // 文档内去重后的词项
+    private static long[] terms(String text) {
+        LongOpenHashSet set = new LongOpenHashSet();
+        SearchTokenizer.tokenize(text, set::add);
+        return set.toLongArray();
+    }
+
+    private void indexDoc(int doc, long[] terms) {
+        for (long term : terms) {
+            IntArrayList docs = delta.get(term);
+            if (docs == null) {
+                docs = new IntArrayList(2);
+                delta.put(term, docs);
+            }
+            docs.add(doc);
+        }
+    }
+
+    private void maybeFlush() {
+        if (nextDoc - deltaStart >= flushDocs) {
+            try {
+                flush();
+            } catch (IOException e) {
+                LOG.warn("写入搜索索引段失败", e);
+            }
+        }
+    }
+
+    private void addBlock(Block block) {
+        blocks.add(block);
+        if (block.offset < 0) {
+            questionBlocks.put(block.questionId, block);
+        } else {
+            pageBlocks.put(new PageKey(block.questionId, block.offset), block);
+        }
+    }
+
+    private @Nullable Block blockOf(int doc) {
+        int lo = 0, hi = blocks.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Block block = blocks.get(mid);
+            if (doc < block.firstDoc) {
+                hi = mid - 1;
+            } else if (doc >= block.firstDoc + block.count) {
+                lo = mid + 1;
+            } else {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    // 词项在所有段和内存中的文档，按编号递增
+    private int[] postings(long term) {
+        IntArrayList result = new IntArrayList();
+        for (Segment segment : segments) {
+            segment.read(term, result);
+        }
+        IntArrayList recent = delta.get(term);
+        if (recent != null) {
+            result.addAll(recent);
+        }
+        return result.toIntArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // 截取第一个匹配位置前后的一段文字。长回答的正文可能有几十万字，只在匹配位置附近合并空白
+    static String snippet(String text, String query) {
+        int at = -1;
+        for (String part : query.trim().split("\\s+")) {
+            if (part.isEmpty()) continue;
+            Matcher matcher = Pattern.compile(part, Pattern.LITERAL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE).matcher(text);
+            if (matcher.find()) {
+                at = matcher.start();
+                break;
+            }
+        }
+        // 多取一些原文，合并空白后仍然够截取
+        int window = SNIPPET_RADIUS * 4;
+        if (at < 0) {
+            int end = Math.min(text.length(), window * 2);
+            String flat = flatten(text, 0, end).strip();
+            boolean more = flat.length() > SNIPPET_RADIUS * 2 || hasText(text, end, text.length());
+            return more ? flat.substring(0, Math.min(flat.length(), SNIPPET_RADIUS * 2)) + "…" : flat;
+        }
+        int from = Math.max(0, at - window);
+        int to = Math.min(text.length(), at + window);
+        String before = flatten(text, from, at);
+        if (from == 0) before = before.stripLeading();
+        String after = flatten(text, at, to);
+        if (to == text.length()) after = after.stripTrailing();
+        boolean cutBefore = before.length() > SNIPPET_RADIUS || hasText(text, 0, from);
+        boolean cutAfter = after.length() > SNIPPET_RADIUS || hasText(text, to, text.length());
+        return (cutBefore ? "…" : "") + before.substring(Math.max(0, before.length() - SNIPPET_RADIUS))
+                + after.substring(0, Math.min(after.length(), SNIPPET_RADIUS)) + (cutAfter ? "…" : "");
+    }
+
+    private static String flatten(String text, int from, int to) {
+        return text.substring(from, to).replaceAll("\\s+", " ");
+    }
+
+    private static boolean hasText(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private void appendRecord(byte type, byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(5 + payload.length).putInt(payload.length).put(type).put(payload).flip();
+        writeFully(docsChannel, buffer, docsChannel.size());
+    }
+
+    // 读取 docs.dat 恢复文档编号和所属页面，不完整的尾部记录截掉
+    private void loadDocs() throws IOException {
+        long size = docsChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(5);
+        while (position + 5 <= size) {
+            header.clear();
+            readFully(docsChannel, header, position);
+            int length = header.flip().getInt();
+            byte type = header.get();
+            if (length < 0 || position + 5 + length > size) break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(docsChannel, payload, position + 5);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+            Block block;
+            try {
+                if (type == RECORD_QUESTION) {
+                    block = new Block(nextDoc, 1, in.readUTF(), -1, 0, in.readUTF());
+                    Block old = questionBlocks.get(block.questionId);
+                    if (old != null) old.deleted = true;
+                } else if (type == RECORD_PAGE) {
+                    block = new Block(nextDoc, 0, in.readUTF(), in.readInt(), in.readInt(), null);
+                    block.count = in.readInt();
+                    block.textPositions = new long[block.count + 1];
+                    block.textPositions[0] = in.readLong();
+                    for (int i = 0; i < block.count; i++) {
+                        block.textPositions[i + 1] = block.textPositions[i] + in.readInt();
+                    }
+                    Block old = pageBlocks.get(new PageKey(block.questionId, block.offset));
+                    if (old != null) old.deleted = true;
+                } else {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            addBlock(block);
+            nextDoc += block.count;
+            position += 5 + length;
+        }
+        if (position < size) {
+            LOG.warn("搜索索引 docs.dat 尾部有 " + (size - position) + " 字节不完整的记录，已截断");
+            docsChannel.truncate(position);
+        }
+    }
+
+    // 打开首尾相接的段文件；合并中途退出时残留的被覆盖的段直接删除
+    private void loadSegments() throws IOException {
+        List<int[]> ranges = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*.idx")) {
+            for (Path file : files) {
+                Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    ranges.add(new int[]{Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))});
+                }
+            }
+        }
+        // 起点相同时长的在前，覆盖短的
+        ranges.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> -r[1]));
+        int expected = 0;
+        for (int[] range : ranges) {
+            Path file = dir.resolve("seg-" + range[0] + "-" + range[1] + ".idx");
+            if (range[0] == expected && range[1] <= nextDoc) {
+                try {
+                    segments.add(Segment.open(file));
+                    expected = range[1];
+                    continue;
+                } catch (IOException e) {
+                    LOG.warn("搜索索引段损坏，将重新索引: " + file, e);
+                }
+            }
+            Files.deleteIfExists(file);
+        }
+        deltaStart = expected;
+    }
+
+    // 还没写成段的文档从原文重新索引
+    private void reindexPending() {
+        int from = deltaStart;
+        for (Block block : blocks) {
+            if (block.firstDoc + block.count <= from || block.deleted) continue;
+            if (block.offset < 0) {
+                indexDoc(block.firstDoc, terms(block.title));
+                continue;
+            }
+            List<Answer> page = pageSource.getPage(block.questionId, block.offset);
+            if (page == null || page.size() != block.count) continue; // 原文已经没有了，这些文档搜索不到
+            for (int i = 0; i < block.count; i++) {
+                Answer answer = page.get(i);
+                indexDoc(block.firstDoc + i, answerTerms(answer.getAuthorName() == null ? "" : answer.getAuthorName(),
+                        AnswerContent.of(answer, 0).plainText()));
+            }
+        }
+    }
+
+    // 把所有段按词项哈希归并成一个段
+    private void merge() throws IOException {
+        int start = segments.get(0).docStart;
+        int end = segments.get(segments.size() - 1).docEnd;
+        Path file = dir.resolve("seg-" + start + "-" + end + ".idx");
+        int n = segments.size();
+        int[] cursor = new int[n];
+        IntArrayList docs = new IntArrayList();
+        try (SegmentWriter writer = new SegmentWriter(file, start, end)) {
+            while (true) {
+                long min = 0;
+                boolean any = false;
+                for (int i = 0; i < n; i++) {
+                    Segment s = segments.get(i);
+                    if (cursor[i] < s.termCount) {
+                        long term = s.termAt(cursor[i]);
+                        if (!any || term < min) {
+                            min = term;
+                            any = true;
+                        }
+                    }
+                }
+                if (!any) break;
+                docs.clear();
+                for (int i = 0; i < n; i++) {
+                    Segment s = segments.get(i);
+                    if (cursor[i] < s.termCount && s.termAt(cursor[i]) == min) {
+                        s.readEntry(cursor[i]++, docs);
+                    }
+                }
+                writer.add(min, docs.elements(), docs.size());
+            }
+        }
+        List<Segment> old = new ArrayList<>(segments);
+        segments.clear();
+        segments.add(Segment.open(file));
+        for (Segment s : old) {
+            try {
+                Files.deleteIfExists(s.file);
+            } catch (IOException e) {
+                // 仍被映射时某些系统上删不掉，下次打开时按覆盖关系删除
+                LOG.debug("删除已合并的段失败: " + s.file, e);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * 一条搜索结果。answerIndex 为 -1 时是问题标题匹配，否则是 offset 那一页中的第几个回答。
+     */
+    public record SearchHit(String questionId, String title, int offset, int answerIndex, String authorName,
+                            String snippet) {
+        public boolean isQuestion() {
+            return answerIndex < 0;
+        }
+    }
+
+    private record PageKey(String questionId, int offset) {
+    }
+
+    // docs.dat 中的一条记录：一个问题标题或者一页回答，占用连续的文档编号
+    private static final class Block {
+        final int firstDoc;
+        int count;
+        final String questionId;
+        final int offset; // 问题标题为 -1
+        final int contentHash;
+        final @Nullable String title;
+        boolean deleted;
+        // 每个回答的文本在 texts.dat 中的起止位置，共 count + 1 个；问题标题为 null
+        long @Nullable [] textPositions;
+
+        Block(int firstDoc, int count, String questionId, int offset, int contentHash, @Nullable String title) {
+            this.firstDoc = firstDoc;
+            this.count = count;
+            this.questionId = questionId;
+            this.offset = offset;
+            this.contentHash = contentHash;
+            this.title = title;
+        }
+    }
+
+    /**
+     * 一个只读的段文件：文件头、变长编码的倒排表、按词项哈希排序的定长词项表。整个文件内存映射。
+     */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final int docStart;
+        final int docEnd;
+        final int termCount;
+        final int termTable;
+
+        private Segment(Path file, MappedByteBuffer buffer) throws IOException {
+            this.file = file;
+            this.buffer = buffer;
+            if (buffer.capacity() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION) {
+                throw new IOException("不是搜索索引段或版本不兼容");
+            }
+            docStart = buffer.getInt(8);
+            docEnd = buffer.getInt(12);
+            termCount = buffer.getInt(16);
+            termTable = buffer.getInt(20);
+            if ((long) termTable + (long) termCount * TERM_ENTRY_SIZE != buffer.capacity()) {
+                throw new IOException("搜索索引段不完整");
+            }
+        }
+
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        long termAt(int index) {
+            return buffer.getLong(termTable + index * TERM_ENTRY_SIZE);
+        }
+
+        void read(long term, IntArrayList out) {
+            int lo = 0, hi = termCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = Long.compare(termAt(mid), term);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    readEntry(mid, out);
+                    return;
+                }
+            }
+        }
+
+        void readEntry(int index, IntArrayList out) {
+            int entry = termTable + index * TERM_ENTRY_SIZE;
+            int position = buffer.getInt(entry + 8);
+            int count = buffer.getInt(entry + 12);
+            int doc = docStart - 1;
+            for (int i = 0; i < count; i++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += value + 1;
+                out.add(doc);
+            }
+        }
+    }
+
+    // 顺序写入词项（哈希递增）和倒排表，关闭时补上词项表和文件头，然后原子替换到目标文件
+    private static final class SegmentWriter implements Closeable {
+        private final Path file;
+        private final Path tmp;
+        private final Path termsTmp;
+        private final int docStart;
+        private final int docEnd;
+        private final DataOutputStream postings;
+        private final DataOutputStream terms;
+        private int termCount;
+
+        SegmentWriter(Path file, int docStart, int docEnd) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.termsTmp = file.resolveSibling(file.getFileName() + ".terms");
+            this.docStart = docStart;
+            this.docEnd = docEnd;
+            postings = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+            postings.write(new byte[SEGMENT_HEADER_SIZE]); // 文件头最后写入
+            terms = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(termsTmp), 1 << 16));
+        }
+
+        void add(long term, int[] docs, int count) throws IOException {
+            terms.writeLong(term);
+            terms.writeInt(postings.size());
+            terms.writeInt(count);
+            int previous = docStart - 1;
+            for (int i = 0; i < count; i++) {
+                writeVarInt(postings, docs[i] - previous - 1);
+                previous = docs[i];
+            }
+            termCount++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            terms.close();
+            int termTable = postings.size();
+            Files.copy(termsTmp, postings);
+            postings.close();
+            Files.delete(termsTmp);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE)
+                        .putInt(SEGMENT_MAGIC).putInt(SEGMENT_VERSION)
+                        .putInt(docStart).putInt(docEnd).putInt(termCount).putInt(termTable)
+                        .flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
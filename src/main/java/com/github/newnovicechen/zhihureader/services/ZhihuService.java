@@ -1,23 +1,65 @@
 package com.github.newnovicechen.zhihureader.services;
 
+import com.github.newnovicechen.zhihureader.exception.HttpException;
 import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.model.FeedPage;
 import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.utils.AnswerPageDecoder;
+import com.github.newnovicechen.zhihureader.utils.AsyncLimiter;
+import com.github.newnovicechen.zhihureader.utils.Futures;
+import com.github.newnovicechen.zhihureader.utils.HttpMetrics;
+import com.github.newnovicechen.zhihureader.utils.HttpResult;
+import com.github.newnovicechen.zhihureader.utils.RecommendFeedDecoder;
+import com.github.newnovicechen.zhihureader.utils.RequestGroup;
 import com.github.newnovicechen.zhihureader.utils.SendHttpUtil;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.intellij.openapi.components.Service;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import okhttp3.HttpUrl;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 @Service(Service.Level.PROJECT)
 public final class ZhihuService {
+    // 每页回答数量，也是缓存和离线存储的单位；一次请求可以取回多页或者不到一页，见 AnswerFetchSizer
+    public static final int ANSWER_PAGE_SIZE = 10;
     private static final String BASE_URL_V3 = "https://www.zhihu.com/api/v3";
     private static final String BASE_URL_V4 = "https://www.zhihu.com/api/v4";
+    private static final String ANSWER_DETAIL_INCLUDE = "data[*].is_normal,admin_closed_comment,reward_info,is_collapsed,annotation_action,annotation_detail,collapse_reason,is_sticky,collapsed_by,suggest_edit,comment_count,can_comment,content,editable_content,voteup_count,reshipment_settings,comment_permission,mark_infos,created_time,updated_time,review_info,question.detail,answer_count,follower_count,excerpt,detail,question_type,title,id,created,updated_time,relevant_info,excerpt,label_info,relationship.is_authorized,is_author,voting,is_thanked,is_nothelp,is_labeled,is_recognized";
+    // 列表接口直接返回回答正文和作者，避免再逐个请求回答详情
+    private static final String ANSWER_LIST_INCLUDE = "data[*].content,author.name";
+    private static final int DEFAULT_ANSWER_FETCH_PARALLELISM = 4;
+    private static final long DEFAULT_PAGE_DEADLINE_MILLIS = 15_000;
+
+    // 接口地址，可以通过 -Dzhihu.api.v3Url / -Dzhihu.api.v4Url 指向本地的替身服务器，用于端到端的延迟测试
+    private String baseUrlV3 = System.getProperty("zhihu.api.v3Url", BASE_URL_V3);
+    private String baseUrlV4 = System.getProperty("zhihu.api.v4Url", BASE_URL_V4);
     private @Nullable String userCookie;
+    // 单请求模式：列表接口带上 include 直接拿到正文，只有缺失正文的回答才单独请求详情
+    private volatile boolean inlineAnswerContent = true;
+    // 为 null 时使用所有项目共用的缓存
+    private volatile @Nullable AnswerPageCache answerCache;
+    private volatile @Nullable AnswerPrefetcher prefetcher;
+    private final AnswerPageFlights answerFlights = new AnswerPageFlights();
+    // 为 null 时使用所有项目共用的离线存储
+    private volatile @Nullable OfflineStore offlineStore;
+    // 为 null 时使用所有项目共用的搜索索引
+    private volatile @Nullable SearchIndex searchIndex;
+    // 回答详情的最大并发请求数
+    private volatile int answerFetchParallelism = DEFAULT_ANSWER_FETCH_PARALLELISM;
+    // 回答列表每次请求的回答数，默认自适应，可以通过 -Dzhihu.answers.fetchSize 固定
+    private volatile AnswerFetchSizer fetchSizer = new AnswerFetchSizer(Integer.getInteger("zhihu.answers.fetchSize", 0));
+    // 整页回答的加载截止时间，超时的回答以占位内容返回
+    private volatile long pageDeadlineMillis = DEFAULT_PAGE_DEADLINE_MILLIS;
+    // 异步接口中处理响应、回调 onAnswer 和写入缓存的线程池，网络等待不占用其中的线程
+    private volatile Executor executor = AppExecutorUtil.getAppExecutorService();
 
     public void setUserCookie(@Nullable String cookie) {
         this.userCookie = cookie;
@@ -28,6 +70,109 @@ public final class ZhihuService {
         return userCookie;
     }
 
+    public void setAnswerFetchParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("并发数必须大于0");
+        }
+        this.answerFetchParallelism = parallelism;
+    }
+
+    /**
+     * 回答列表每次请求的回答数，必须小于 {@link #ANSWER_PAGE_SIZE} 或者是它的倍数，0 表示根据回答长度和网速自适应。
+     * 界面仍然按页显示，一次多取的页面放进缓存；不到一页时分几次请求，拼成一页。
+     */
+    public void setAnswerFetchSize(int size) {
+        this.fetchSizer = new AnswerFetchSizer(size);
+    }
+
+    public void setPageDeadline(long timeout, @NotNull TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("截止时间必须大于0");
+        }
+        this.pageDeadlineMillis = unit.toMillis(timeout);
+    }
+
+    public void setExecutor(@NotNull Executor executor) {
+        this.executor = executor;
+    }
+
+    public AnswerPageCache answerCache() {
+        AnswerPageCache cache = answerCache;
+        return cache != null ? cache : AnswerPageCache.shared();
+    }
+
+    public void setAnswerCache(@Nullable AnswerPageCache answerCache) {
+        this.answerCache = answerCache;
+    }
+
+    /**
+     * 离线存储，打开失败时返回 null。
+     */
+    public @Nullable OfflineStore offlineStore() {
+        OfflineStore store = offlineStore;
+        return store != null ? store : OfflineStore.shared();
+    }
+
+    public void setOfflineStore(@Nullable OfflineStore offlineStore) {
+        this.offlineStore = offlineStore;
+    }
+
+    /**
+     * 读过内容的全文索引，打开失败时返回 null。
+     */
+    public @Nullable SearchIndex searchIndex() {
+        SearchIndex index = searchIndex;
+        return index != null ? index : SearchIndex.shared();
+    }
+
+    public void setSearchIndex(@Nullable SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * 在读过的问题标题、回答作者和正文中搜索。索引不可用时返回空列表。
+     */
+    public List<SearchIndex.SearchHit> search(@NotNull String query, int limit) {
+        SearchIndex index = searchIndex();
+        return index == null ? List.of() : index.search(query, limit);
+    }
+
+    /**
+     * 诊断信息：HTTP 各阶段和页面加载的耗时分布、连接复用和回答缓存的命中情况。
+     */
+    public String diagnosticsReport() {
+        AnswerPageCache.Stats stats = answerCache().getStats();
+        long lookups = stats.hits() + stats.misses();
+        return HttpMetrics.shared().report()
+                + String.format("%n回答缓存：内存命中 %d，磁盘命中 %d，未命中 %d，命中率 %.0f%%，条件请求续期 %d，淘汰 %d%n",
+                stats.memoryHits(), stats.diskHits(), stats.misses(), lookups == 0 ? 0.0 : 100.0 * stats.hits() / lookups,
+                stats.revalidations(), stats.evictions());
+    }
+
+    public AnswerPrefetcher prefetcher() {
+        AnswerPrefetcher p = prefetcher;
+        if (p == null) {
+            synchronized (this) {
+                p = prefetcher;
+                if (p == null) {
+                    p = new AnswerPrefetcher(this);
+                    prefetcher = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    public void setInlineAnswerContent(boolean inlineAnswerContent) {
+        this.inlineAnswerContent = inlineAnswerContent;
+    }
+
+    @TestOnly
+    public void setBaseUrls(@NotNull String v3, @NotNull String v4) {
+        this.baseUrlV3 = v3;
+        this.baseUrlV4 = v4;
+    }
+
     public boolean isCookieSetAndValid() {
         // 简单的检查，可以根据需要增加更复杂的校验逻辑，例如检查是否包含特定键
         return userCookie != null && !userCookie.trim().isEmpty();
@@ -42,42 +187,446 @@ public final class ZhihuService {
     }
 
     public List<Question> zhihuRecommend() {
+        return zhihuRecommend(new RequestGroup());
+    }
+
+    /**
+     * 请求归属于 group，调用方取消 group 后请求会被中断并抛出 {@link CancellationException}。
+     */
+    public List<Question> zhihuRecommend(@NotNull RequestGroup group) {
+        return zhihuRecommendPage(null, group).getQuestions();
+    }
+
+    /**
+     * 获取推荐流的一页。nextUrl 为 null 时获取第一页，否则使用上一页返回的 paging.next。
+     */
+    public FeedPage zhihuRecommendPage(@Nullable String nextUrl, @NotNull RequestGroup group) {
+        return Futures.await(zhihuRecommendPageAsync(nextUrl, group));
+    }
+
+    /**
+     * {@link #zhihuRecommendPage} 的异步版本，等待网络期间不占用线程。
+     */
+    public CompletableFuture<FeedPage> zhihuRecommendPageAsync(@Nullable String nextUrl, @NotNull RequestGroup group) {
         if (!isCookieSetAndValid()) {
-            throw new IllegalStateException("知乎Cookie未设置或无效，请先设置Cookie。");
+            return CompletableFuture.failedFuture(new IllegalStateException("知乎Cookie未设置或无效，请先设置Cookie。"));
         }
-        List<Question> questionList = new ArrayList<>();
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL_V3 + "/feed/topstory/recommend")).newBuilder().build();
+        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(nextUrl != null ? nextUrl : baseUrlV3 + "/feed/topstory/recommend")).newBuilder().build();
         Map<String, String> headMap = getAuthHeadMap();
-        JsonObject jsonObject = SendHttpUtil.sendHttpGet(url, headMap);
-        JsonArray datas = jsonObject.getAsJsonArray("data");
-        for (JsonElement data : datas) {
-            String title = data.getAsJsonObject().getAsJsonObject("target").getAsJsonObject().getAsJsonObject("question").get("title").getAsString();
-            String id = data.getAsJsonObject().getAsJsonObject("target").getAsJsonObject().getAsJsonObject("question").get("id").getAsString();
-            questionList.add(new Question(id, title));
-        }
-        return questionList;
+        OfflineStore store = offlineStore();
+        return SendHttpUtil.sendHttpGetAsync(url, headMap, RecommendFeedDecoder.INSTANCE, group).handleAsync((page, error) -> {
+            if (error != null) {
+                group.checkCancelled();
+                Throwable cause = Futures.unwrap(error);
+                // 第一页请求失败时列出离线保存过的问题，没有网络也能继续阅读
+                List<Question> offline = !(cause instanceof HttpException) || store == null || nextUrl != null ? List.of() : store.questionsWithPages();
+                if (offline.isEmpty()) {
+                    throw Futures.propagate(cause);
+                }
+                return new FeedPage(offline, null, true);
+            }
+            page.getQuestions().forEach(question -> rememberQuestion(store, question));
+            return page;
+        }, executor);
+    }
+
+    /**
+     * 创建一个新的推荐流游标，从第一页开始加载。
+     */
+    public RecommendFeed newRecommendFeed() {
+        return new RecommendFeed(this);
     }
 
     public List<Answer> zhihuAnswer(String questionId, int offset) {
+        return zhihuAnswer(questionId, offset, new RequestGroup());
+    }
+
+    /**
+     * 加载一页回答。同一页已经在加载时直接加入进行中的加载，不会重复发起请求。
+     * group 被取消时方法立即抛出 {@link CancellationException}，不会返回不完整的页面；
+     * 没有其他调用方等待这一页时，进行中的请求也会被中断。
+     */
+    public List<Answer> zhihuAnswer(String questionId, int offset, @NotNull RequestGroup group) {
+        return zhihuAnswer(questionId, offset, group, null);
+    }
+
+    /**
+     * 同 {@link #zhihuAnswer(String, int, RequestGroup)}，本页需要请求时一次取 fetchSize 个回答，多出的页面放进缓存，
+     * 之后加载这些页不再请求；fetchSize 不到一页时分几次请求。返回的仍然只有 offset 开始的一页。
+     *
+     * @param fetchSize 小于 {@link #ANSWER_PAGE_SIZE} 或者是它的倍数
+     */
+    public List<Answer> zhihuAnswer(String questionId, int offset, int fetchSize, @NotNull RequestGroup group) {
+        AnswerFetchSizer.checkSize(fetchSize);
+        return Futures.await(loadAnswerPage(questionId, offset, fetchSize, group, null, true));
+    }
+
+    /**
+     * 同 {@link #zhihuAnswer(String, int, RequestGroup)}，另外每个回答就绪时按页内顺序回调 onAnswer，
+     * 调用方可以边加载边显示，不必等最慢的回答。回调在加载线程上执行。
+     */
+    public List<Answer> zhihuAnswer(String questionId, int offset, @NotNull RequestGroup group,
+                                    @Nullable Consumer<Answer> onAnswer) {
+        return Futures.await(zhihuAnswerAsync(questionId, offset, group, onAnswer));
+    }
+
+    /**
+     * {@link #zhihuAnswer(String, int, RequestGroup, Consumer)} 的异步版本。请求通过 OkHttp 的异步调用发出，
+     * 等待网络期间不占用线程；查缓存、打开离线存储、onAnswer 和结果处理都在 {@link #setExecutor 配置的线程池}上执行，
+     * 调用方的线程不会读写磁盘，可以直接在 EDT 上调用。
+     * 取消返回的 future 和取消 group 的效果相同。
+     */
+    public CompletableFuture<List<Answer>> zhihuAnswerAsync(String questionId, int offset, @NotNull RequestGroup group,
+                                                            @Nullable Consumer<Answer> onAnswer) {
+        return loadAnswerPage(questionId, offset, 0, group, onAnswer, true);
+    }
+
+    /**
+     * 下载问题的前 maxPages 页回答到离线存储，回答不足一页时提前结束。每保存一页回调一次 onPage，
+     * 参数是已经保存的页数。请求失败时直接抛出异常，不会用离线内容代替。
+     *
+     * @return 保存的页数
+     */
+    public int downloadForOffline(@NotNull Question question, int maxPages, @NotNull RequestGroup group,
+                                  @Nullable IntConsumer onPage) {
+        OfflineStore store = offlineStore();
+        if (store == null) {
+            throw new IllegalStateException("离线存储不可用");
+        }
+        rememberQuestion(store, question);
+        // 一次请求取回多页，后面的页直接从缓存取
+        int fetchSize = Math.min(maxPages, AnswerFetchSizer.SIZES[AnswerFetchSizer.SIZES.length - 1] / ANSWER_PAGE_SIZE) * ANSWER_PAGE_SIZE;
+        int saved = 0;
+        for (int page = 0; page < maxPages; page++) {
+            group.checkCancelled();
+            int offset = page * ANSWER_PAGE_SIZE;
+            List<Answer> answers = Futures.await(loadAnswerPage(question.getId(), offset, fetchSize, group, null, false));
+            // 有回答加载失败的页面不会保存
+            if (store.containsPage(question.getId(), offset)) {
+                saved++;
+                if (onPage != null) {
+                    onPage.accept(saved);
+                }
+            }
+            if (answers.size() < ANSWER_PAGE_SIZE) {
+                break;
+            }
+        }
+        return saved;
+    }
+
+    // fetchSize 为 0 时由 fetchSizer 决定
+    private CompletableFuture<List<Answer>> loadAnswerPage(String questionId, int offset, int fetchSize, @NotNull RequestGroup group,
+                                                           @Nullable Consumer<Answer> onAnswer, boolean offlineFallback) {
         if (!isCookieSetAndValid()) {
-            throw new IllegalStateException("知乎Cookie未设置或无效，请先设置Cookie。");
+            return CompletableFuture.failedFuture(new IllegalStateException("知乎Cookie未设置或无效，请先设置Cookie。"));
         }
-        List<Answer> answerList = new ArrayList<>();
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL_V4 + "/questions/" + questionId + "/answers?limit=10&offset=" + offset)).newBuilder().build();
+        long start = System.nanoTime();
+        // 缓存的磁盘层和离线存储第一次打开时都要读文件，放到线程池上
+        CompletableFuture<List<Answer>> page = Futures.startAsync(
+                () -> loadAnswerPageUncounted(questionId, offset, fetchSize, group, onAnswer, offlineFallback), executor);
+        // 返回原来的 future 而不是 whenComplete 派生的，调用方取消时才能传到加载上
+        page.whenComplete((answers, error) -> {
+            if (error == null) {
+                HttpMetrics.shared().record(HttpMetrics.Phase.PAGE, System.nanoTime() - start);
+            }
+        });
+        return page;
+    }
+
+    private CompletableFuture<List<Answer>> loadAnswerPageUncounted(String questionId, int offset, int fetchSize, @NotNull RequestGroup group,
+                                                                    @Nullable Consumer<Answer> onAnswer, boolean offlineFallback) {
+        // TTL 内的缓存页直接返回，不发起任何请求
+        AnswerPageCache cache = answerCache();
+        AnswerPageCache.Page cached = cache.get(questionId, offset);
+        OfflineStore store = offlineStore();
+        if (cached != null && cache.isFresh(cached)) {
+            return CompletableFuture.supplyAsync(() -> {
+                saveOfflineIfAbsent(store, questionId, offset, cached.getAnswers());
+                return deliverAll(cached.getAnswers(), onAnswer);
+            }, executor);
+        }
+        // 同一页的并发加载合并成一次，后到的调用方共享进行中的请求
+        AnswerPageFlights.Key key = new AnswerPageFlights.Key(questionId, offset, offlineFallback);
+        return answerFlights.load(key, group, onAnswer,
+                (flightGroup, deliver) -> fetchAnswerPage(questionId, offset, fetchSize, cached, store, flightGroup, deliver, offlineFallback));
+    }
+
+    private CompletableFuture<List<Answer>> fetchAnswerPage(String questionId, int offset, int fetchSize, @Nullable AnswerPageCache.Page cached,
+                                                            @Nullable OfflineStore store, @NotNull RequestGroup group,
+                                                            @NotNull Consumer<Answer> onAnswer, boolean offlineFallback) {
+        long start = System.nanoTime();
+        long deadline = start + pageDeadlineMillis * 1_000_000L;
+        // 有过期的缓存页时只请求这一页，缓存的 ETag 对应的是同样大小的页；列表不带正文时多取的页还要逐个请求详情，也只取一页
+        AnswerFetchSizer sizer = fetchSizer;
+        int limit = cached != null || !inlineAnswerContent ? ANSWER_PAGE_SIZE : fetchSize > 0 ? fetchSize : sizer.nextSize();
+        HttpUrl url = answerListUrl(questionId, offset, limit);
         Map<String, String> headMap = getAuthHeadMap();
-        JsonObject jsonObject = SendHttpUtil.sendHttpGet(url, headMap);
-        JsonArray datas = jsonObject.getAsJsonArray("data");
-        for (JsonElement data : datas) {
-            HttpUrl answerUrl = Objects.requireNonNull(HttpUrl.parse(data.getAsJsonObject().get("url").getAsString()))
-                    .newBuilder()
-                    .addQueryParameter("include", "data[*].is_normal,admin_closed_comment,reward_info,is_collapsed,annotation_action,annotation_detail,collapse_reason,is_sticky,collapsed_by,suggest_edit,comment_count,can_comment,content,editable_content,voteup_count,reshipment_settings,comment_permission,mark_infos,created_time,updated_time,review_info,question.detail,answer_count,follower_count,excerpt,detail,question_type,title,id,created,updated_time,relevant_info,excerpt,label_info,relationship.is_authorized,is_author,voting,is_thanked,is_nothelp,is_labeled,is_recognized")
-                    .build();
-            JsonObject answerDetail = SendHttpUtil.sendHttpGet(answerUrl, getAuthHeadMap());
-            String answerContent = answerDetail.get("content").getAsString();
-            String authorName = answerDetail.get("author").getAsJsonObject().get("name").getAsString();
-            Answer answer = new Answer(authorName, answerContent);
-            answerList.add(answer);
-        }
-        return answerList;
-    }
-}
\ No newline at end of file
+
+        // 过期的缓存页带上 ETag/Last-Modified 做条件请求，304 时续期后直接使用
+        Map<String, String> listHeadMap = new HashMap<>(headMap);
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                listHeadMap.put("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                listHeadMap.put("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        return SendHttpUtil.sendConditionalGetAsync(url, listHeadMap, AnswerPageDecoder.INSTANCE, group).handleAsync((result, error) -> {
+            if (error != null) {
+                group.checkCancelled();
+                Throwable cause = Futures.unwrap(error);
+                // 网络不可用或请求失败时，使用过期的缓存页或离线保存的页面
+                List<Answer> offline = cause instanceof HttpException && offlineFallback ? offlinePage(cached, store, questionId, offset) : null;
+                if (offline == null) {
+                    throw Futures.propagate(cause);
+                }
+                return CompletableFuture.completedFuture(deliverAll(offline, onAnswer));
+            }
+            if (result.isNotModified()) {
+                if (cached == null) {
+                    throw new HttpException("远程调用失败");
+                }
+                saveOfflineIfAbsent(store, questionId, offset, cached.getAnswers());
+                return CompletableFuture.completedFuture(deliverAll(answerCache().revalidated(questionId, offset, cached).getAnswers(), onAnswer));
+            }
+            List<AnswerPageDecoder.Item> items = Objects.requireNonNull(result.getBody());
+            recordFetch(sizer, items, System.nanoTime() - start);
+            if (limit < ANSWER_PAGE_SIZE) {
+                return collectBatches(questionId, offset, limit, items, store, headMap, group, onAnswer, deadline, sizer);
+            }
+            // 多取时 ETag 对应整个批次，不能用于单页的条件请求
+            HttpResult<?> validators = limit == ANSWER_PAGE_SIZE ? result : null;
+            if (items.size() <= ANSWER_PAGE_SIZE) {
+                return collectAnswers(questionId, offset, items, validators, store, headMap, group, onAnswer, deadline);
+            }
+            // 多取的页在本页交付之后再放进缓存，不耽误本页的显示
+            List<AnswerPageDecoder.Item> following = items.subList(ANSWER_PAGE_SIZE, items.size());
+            return collectAnswers(questionId, offset, items.subList(0, ANSWER_PAGE_SIZE), validators, store, headMap, group, onAnswer, deadline)
+                    .thenApply(answers -> {
+                        cacheFollowingPages(questionId, offset + ANSWER_PAGE_SIZE, following, store, group);
+                        return answers;
+                    });
+        }, executor).thenCompose(Function.identity());
+    }
+
+    private HttpUrl answerListUrl(String questionId, int offset, int limit) {
+        HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(baseUrlV4 + "/questions/" + questionId + "/answers")).newBuilder();
+        if (inlineAnswerContent) {
+            urlBuilder.addQueryParameter("include", ANSWER_LIST_INCLUDE);
+        }
+        return urlBuilder
+                .addQueryParameter("limit", String.valueOf(limit))
+                .addQueryParameter("offset", String.valueOf(offset))
+                .build();
+    }
+
+    // 一页分几批请求（回答很长或网速很慢时）：每批到达后立即按顺序交付，同时请求下一批；
+    // 整页都成功才作为一页放进缓存。第一批之后的请求失败时整页失败，已经交付的回答不会再用离线内容重复交付
+    private CompletableFuture<List<Answer>> collectBatches(String questionId, int offset, int batchSize, List<AnswerPageDecoder.Item> first,
+                                                           @Nullable OfflineStore store, Map<String, String> headMap,
+                                                           @NotNull RequestGroup group, @NotNull Consumer<Answer> onAnswer,
+                                                           long deadline, AnswerFetchSizer sizer) {
+        List<Answer> answerList = new ArrayList<>(ANSWER_PAGE_SIZE);
+        AtomicBoolean complete = new AtomicBoolean(true);
+        CompletableFuture<List<AnswerPageDecoder.Item>> batch = CompletableFuture.completedFuture(first);
+        CompletableFuture<Void> delivered = deliverInOrder(first, answerList, complete, headMap, group, onAnswer, deadline);
+        for (int from = batchSize; from < ANSWER_PAGE_SIZE; from += batchSize) {
+            int batchOffset = offset + from;
+            int limit = Math.min(batchSize, ANSWER_PAGE_SIZE - from);
+            batch = batch.thenCompose(previous -> {
+                // 上一批不满说明已经没有更多回答
+                if (previous.size() < batchSize) {
+                    return CompletableFuture.completedFuture(List.of());
+                }
+                long start = System.nanoTime();
+                return SendHttpUtil.sendHttpGetAsync(answerListUrl(questionId, batchOffset, limit), headMap, AnswerPageDecoder.INSTANCE, group)
+                        .thenApply(items -> {
+                            recordFetch(sizer, items, System.nanoTime() - start);
+                            return items;
+                        });
+            });
+            CompletableFuture<List<AnswerPageDecoder.Item>> items = batch;
+            delivered = delivered.thenCompose(ignored -> items)
+                    .thenCompose(next -> deliverInOrder(next, answerList, complete, headMap, group, onAnswer, deadline));
+        }
+        return delivered.thenApply(ignored -> {
+            group.checkCancelled();
+            if (complete.get()) {
+                rememberPage(store, questionId, offset, new AnswerPageCache.Page(answerList, null, null, System.currentTimeMillis()));
+            }
+            return answerList;
+        });
+    }
+
+    private static void recordFetch(AnswerFetchSizer sizer, List<AnswerPageDecoder.Item> items, long nanos) {
+        int answers = 0;
+        long chars = 0;
+        for (AnswerPageDecoder.Item item : items) {
+            if (item.getContent() != null) {
+                answers++;
+                chars += item.getContent().length();
+            }
+        }
+        sizer.record(answers, chars, nanos);
+    }
+
+    // 一次请求多取的页：正文都在列表里的整页放进缓存和离线存储；不满一页或缺少正文的页不缓存，加载到时照常请求
+    private void cacheFollowingPages(String questionId, int offset, List<AnswerPageDecoder.Item> items,
+                                     @Nullable OfflineStore store, @NotNull RequestGroup group) {
+        long now = System.currentTimeMillis();
+        for (int from = 0; from + ANSWER_PAGE_SIZE <= items.size() && !group.isCancelled(); from += ANSWER_PAGE_SIZE) {
+            List<AnswerPageDecoder.Item> pageItems = items.subList(from, from + ANSWER_PAGE_SIZE);
+            if (pageItems.stream().anyMatch(item -> item.getContent() == null)) {
+                continue;
+            }
+            List<Answer> answers = new ArrayList<>(ANSWER_PAGE_SIZE);
+            for (AnswerPageDecoder.Item item : pageItems) {
+                answers.add(new Answer(item.getAuthorName(), item.getContent()));
+            }
+            rememberPage(store, questionId, offset + from, new AnswerPageCache.Page(answers, null, null, now));
+        }
+    }
+
+    // 列表里已经带正文的回答直接使用；其余的异步获取详情，同时进行的请求数受 answerFetchParallelism 限制
+    // validators 为 null 时缓存的页面不带 ETag/Last-Modified
+    private CompletableFuture<List<Answer>> collectAnswers(String questionId, int offset, List<AnswerPageDecoder.Item> items,
+                                                           @Nullable HttpResult<?> validators, @Nullable OfflineStore store,
+                                                           Map<String, String> headMap, @NotNull RequestGroup group,
+                                                           @NotNull Consumer<Answer> onAnswer, long deadline) {
+        List<Answer> answerList = new ArrayList<>(items.size());
+        AtomicBoolean complete = new AtomicBoolean(true);
+        CompletableFuture<Void> delivered = deliverInOrder(items, answerList, complete, headMap, group, onAnswer, deadline);
+        return delivered.thenApply(ignored -> {
+            // 取消时失败的回答只是被中断的请求，不返回这样的页面
+            group.checkCancelled();
+            // 有回答加载失败的页面不缓存，下次重新获取
+            if (complete.get()) {
+                rememberPage(store, questionId, offset, new AnswerPageCache.Page(answerList, validators == null ? null : validators.getEtag(),
+                        validators == null ? null : validators.getLastModified(), System.currentTimeMillis()));
+            }
+            return answerList;
+        });
+    }
+
+    // 逐个交付 items 中的回答并加入 answerList；有回答获取失败或超时时把 complete 置为 false
+    private CompletableFuture<Void> deliverInOrder(List<AnswerPageDecoder.Item> items, List<Answer> answerList, AtomicBoolean complete,
+                                                   Map<String, String> headMap, @NotNull RequestGroup group,
+                                                   @NotNull Consumer<Answer> onAnswer, long deadline) {
+        AsyncLimiter limiter = new AsyncLimiter(answerFetchParallelism);
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        List<CompletableFuture<Answer>> futures = new ArrayList<>(items.size());
+        for (AnswerPageDecoder.Item item : items) {
+            if (item.getContent() != null) {
+                futures.add(CompletableFuture.completedFuture(new Answer(item.getAuthorName(), item.getContent())));
+            } else if (item.getUrl() == null) {
+                futures.add(CompletableFuture.failedFuture(new HttpException("缺少回答地址")));
+            } else {
+                HttpUrl answerUrl = Objects.requireNonNull(HttpUrl.parse(item.getUrl()))
+                        .newBuilder()
+                        .addQueryParameter("include", ANSWER_DETAIL_INCLUDE)
+                        .build();
+                // 整页共用一个截止时间，超时的请求被取消
+                futures.add(limiter.submit(() -> fetchAnswerDetail(answerUrl, headMap, group))
+                        .orTimeout(remaining, TimeUnit.NANOSECONDS));
+            }
+        }
+
+        // 按原顺序交付：每个回答等前一个交付之后才交付，单个回答失败或超时只影响它自己
+        CompletableFuture<Void> delivered = CompletableFuture.completedFuture(null);
+        for (CompletableFuture<Answer> future : futures) {
+            CompletableFuture<Answer> settled = future.handle((answer, error) -> {
+                if (error == null) {
+                    return answer;
+                }
+                Throwable cause = Futures.unwrap(error);
+                return failedAnswer(cause instanceof TimeoutException ? "加载超时" : cause.getMessage());
+            });
+            delivered = delivered.thenCombineAsync(settled, (ignored, answer) -> {
+                if (future.isCompletedExceptionally()) {
+                    complete.set(false);
+                }
+                answerList.add(answer);
+                if (!group.isCancelled()) {
+                    onAnswer.accept(answer);
+                }
+                return null;
+            }, executor);
+        }
+        return delivered;
+    }
+
+    private static @Nullable List<Answer> offlinePage(@Nullable AnswerPageCache.Page cached, @Nullable OfflineStore store,
+                                                      String questionId, int offset) {
+        if (cached != null) {
+            return cached.getAnswers();
+        }
+        return store == null ? null : store.getPage(questionId, offset);
+    }
+
+    // 缓存中的页面没有经过离线存储时补存一份，已经保存过的不重复写入
+    private void saveOfflineIfAbsent(@Nullable OfflineStore store, String questionId, int offset, List<Answer> answers) {
+        if (store != null && !store.containsPage(questionId, offset)) {
+            store.putPage(questionId, offset, answers);
+            indexPage(questionId, offset, answers);
+        }
+    }
+
+    // 取到的问题和回答页保存到离线存储，并在后台加入搜索索引
+    private void rememberQuestion(@Nullable OfflineStore store, Question question) {
+        if (store != null) {
+            store.putQuestion(question);
+        }
+        SearchIndex index = searchIndex();
+        if (index != null) {
+            index.addQuestionAsync(question);
+        }
+    }
+
+    // 缓存的磁盘层就是这个离线存储时，放进缓存已经写入了存储，不再保存第二份
+    private void rememberPage(@Nullable OfflineStore store, String questionId, int offset, AnswerPageCache.Page page) {
+        AnswerPageCache cache = answerCache();
+        cache.put(questionId, offset, page);
+        if (store != null && store != cache.diskStore()) {
+            store.putPage(questionId, offset, page.getAnswers());
+        }
+        indexPage(questionId, offset, page.getAnswers());
+    }
+
+    private void indexPage(String questionId, int offset, List<Answer> answers) {
+        SearchIndex index = searchIndex();
+        if (index != null) {
+            index.addPageAsync(questionId, offset, answers);
+        }
+    }
+
+    private CompletableFuture<Answer> fetchAnswerDetail(HttpUrl answerUrl, Map<String, String> headMap, RequestGroup group) {
+        CompletableFuture<AnswerPageDecoder.Item> request = SendHttpUtil.sendHttpGetAsync(answerUrl, headMap, AnswerPageDecoder.DETAIL, group);
+        CompletableFuture<Answer> answer = request.thenApply(detail -> {
+            if (detail.getContent() == null) {
+                throw new HttpException("回答内容为空");
+            }
+            return new Answer(detail.getAuthorName(), detail.getContent());
+        });
+        // 取消或超时不会从依赖的 future 传回去，这里手动取消请求
+        answer.whenComplete((value, error) -> {
+            if (error != null) {
+                request.cancel(true);
+            }
+        });
+        return answer;
+    }
+
+    private static List<Answer> deliverAll(List<Answer> answers, @Nullable Consumer<Answer> onAnswer) {
+        if (onAnswer != null) {
+            answers.forEach(onAnswer);
+        }
+        return answers;
+    }
+
+    // 单个回答获取失败时的占位内容，保证页面上回答的数量和顺序不变
+    private static Answer failedAnswer(@Nullable String reason) {
+        return new Answer("", "<p>该回答加载失败：" + (reason == null ? "未知错误" : reason) + "</p>");
+    }
+}
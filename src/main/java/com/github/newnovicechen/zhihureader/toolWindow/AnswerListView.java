@@ -0,0 +1,348 @@
+package com.github.newnovicechen.zhihureader.toolWindow;
+
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.*;
+import java.awt.*;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import static com.github.newnovicechen.zhihureader.toolWindow.AnswerPageView.*;
+
+/**
+ * 按视口虚拟化的回答列表：问题标题和每个回答各占一行，每行是一个独立的小文档。
+ * <p>
+ * 只有视口附近的行才会创建组件、解析 HTML 并测量高度；离开视口的行释放组件和文档，只保留
+ * {@link AnswerPageView} 里的字符串和测量过的高度。没有测量过的行按内容长度估算高度。
+ * 窗口宽度变化时也只需要重新排版可见的行。已经创建组件的行内容变高（例如图片加载完成）时，
+ * 组件 revalidate 触发列表重新排版，按新的首选高度摆放后面的行。
+ * <p>
+ * 行的文档在后台线程上构建：拼接文本、解析 HTML 生成文档，这时文档还没有关联任何组件。
+ * 组件的创建、安装 UI、测量高度和摆放都在 EDT 上进行，Swing 组件不会在其他线程上被访问。
+ * 除后台构建文档以外只在 EDT 上访问。
+ */
+final class AnswerListView extends JPanel implements Scrollable {
+    // 视口上下额外创建组件的范围，滚动时不至于露出空白
+    private static final int OVERSCAN = 400;
+    private static final int ESTIMATED_LINE_HEIGHT = 20;
+    private static final int ESTIMATED_CHAR_WIDTH = 14;
+    private static final int HEADER_ROW = -1;
+    private static final int NO_ANSWER_ROW = -2;
+    private static final Logger LOG = Logger.getInstance(AnswerListView.class);
+    private static final ExecutorService ROW_BUILDER =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Zhihu Answer Row", 2);
+
+    private final Supplier<? extends EditorKit> htmlKitFactory;
+    private final List<Row> rows = new ArrayList<>();
+    private @Nullable AnswerPageView page;
+    private boolean htmlMode = true;
+    private int totalHeight;
+    private @Nullable JViewport viewport;
+    private final ChangeListener viewportListener = e -> layoutVisibleRows();
+
+    AnswerListView(Supplier<? extends EditorKit> htmlKitFactory) {
+        super(null);
+        this.htmlKitFactory = htmlKitFactory;
+        setOpaque(false);
+    }
+
+    /**
+     * 显示新的一页，滚动到顶部。
+     */
+    void setPage(@Nullable AnswerPageView page) {
+        this.page = page;
+        releaseAll();
+        rows.clear();
+        pageChanged();
+        JViewport vp = viewport;
+        if (vp != null) {
+            vp.setViewPosition(new Point(0, 0));
+        }
+    }
+
+    @Nullable AnswerPageView getPage() {
+        return page;
+    }
+
+    /**
+     * 页面追加了回答或者加载完成，补上新的行。已有的行保持不变。
+     */
+    void pageChanged() {
+        AnswerPageView p = page;
+        int wanted = p == null ? 0 : 1 + p.size() + (p.isComplete() && p.size() == 0 ? 1 : 0);
+        while (rows.size() > wanted) {
+            release(rows.remove(rows.size() - 1));
+        }
+        while (rows.size() < wanted) {
+            int i = rows.size();
+            rows.add(new Row(i == 0 ? HEADER_ROW : i - 1 < p.size() ? i - 1 : NO_ANSWER_ROW));
+        }
+        revalidate();
+        repaint();
+    }
+
+    void setHtmlMode(boolean htmlMode) {
+        if (this.htmlMode == htmlMode) {
+            return;
+        }
+        this.htmlMode = htmlMode;
+        // 两种模式的行高不同，已经测量的高度只作为估算值
+        releaseAll();
+        for (Row row : rows) {
+            row.measuredWidth = -1;
+        }
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport vp) {
+            viewport = vp;
+            vp.addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    @Override
+    public void doLayout() {
+        layoutVisibleRows();
+    }
+
+    /**
+     * 为视口附近的行安排构建组件，释放其余行的组件，然后按行高依次摆放。
+     */
+    private void layoutVisibleRows() {
+        int width = getWidth();
+        AnswerPageView p = page;
+        if (width <= 0 || p == null) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        int top = visible.y - OVERSCAN;
+        int bottom = visible.y + visible.height + OVERSCAN;
+        int y = 0;
+        for (Row row : rows) {
+            int height = row.measuredWidth == width ? row.height : estimateHeight(p, row, width);
+            if (y < bottom && y + height > top) {
+                JTextComponent component = row.component;
+                if (component == null) {
+                    requestComponent(p, row, width); // 构建完成之前按估算高度占位
+                } else {
+                    // 宽度没变时也要检查首选高度：图片加载完成后行会 revalidate，高度从占位框变成图片的高度
+                    if (row.measuredWidth != width || component.getPreferredSize().height != row.height) {
+                        height = measure(component, width);
+                        row.height = height;
+                        row.measuredWidth = width;
+                    }
+                    component.setBounds(0, y, width, height);
+                }
+            } else {
+                release(row);
+            }
+            y += height;
+        }
+        if (y != totalHeight) {
+            totalHeight = y;
+            revalidate();
+        }
+    }
+
+    private int estimateHeight(AnswerPageView p, Row row, int width) {
+        if (row.height >= 0) {
+            return row.height; // 宽度或模式变化前测量的高度
+        }
+        // 按原始 HTML 的长度估算，不为估算去预处理回答；大约三分之二是标签
+        int length = row.index >= 0 ? p.getAnswers().get(row.index).getContentLength() / 3 : 0;
+        int charsPerLine = Math.max(1, width / ESTIMATED_CHAR_WIDTH);
+        return (length / charsPerLine + 2) * ESTIMATED_LINE_HEIGHT;
+    }
+
+    // 在 EDT 上取出行内容需要的数据，返回的 Supplier 在后台线程上拼接文本
+    private Supplier<String> textSource(AnswerPageView p, Row row) {
+        boolean html = htmlMode;
+        return switch (row.index) {
+            case HEADER_ROW -> {
+                Question question = p.getQuestion();
+                yield () -> html ? htmlHeader(question) : plainHeader(question);
+            }
+            case NO_ANSWER_ROW -> () -> html ? NO_ANSWER_HTML : ZhihuToolWindowFactory.htmlToPlainText(NO_ANSWER_HTML);
+            default -> p.answerSource(row.index, html);
+        };
+    }
+
+    private static int measure(JTextComponent component, int width) {
+        component.setSize(width, Short.MAX_VALUE);
+        return component.getPreferredSize().height;
+    }
+
+    private void requestComponent(AnswerPageView p, Row row, int width) {
+        if (row.building) {
+            return;
+        }
+        row.building = true;
+        int token = row.token;
+        Supplier<String> text = textSource(p, row);
+        EditorKit kit = htmlMode ? htmlKitFactory.get() : null;
+        // 空文档在 EDT 上创建，HTMLEditorKit 在这里加载共享的默认样式表
+        Document document = kit == null ? new PlainDocument() : kit.createDefaultDocument();
+        ROW_BUILDER.execute(() -> {
+            fillDocument(kit, document, text.get());
+            SwingUtilities.invokeLater(() -> {
+                if (row.token != token) return; // 构建期间行被释放或者切换了模式
+                row.building = false;
+                JTextComponent component = createComponent(kit, document);
+                row.component = component;
+                row.height = measure(component, width);
+                row.measuredWidth = width;
+                add(component);
+                revalidate();
+                repaint();
+            });
+        });
+    }
+
+    // 在后台线程上填充文档，文档关联到组件之前只被这个线程访问
+    private static void fillDocument(@Nullable EditorKit kit, Document document, String text) {
+        try {
+            if (kit == null) {
+                document.insertString(0, text, null);
+                return;
+            }
+            document.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+            kit.read(new StringReader("<html><body>" + text + "</body></html>"), document, 0);
+        } catch (IOException | BadLocationException e) {
+            LOG.warn("构建回答文档失败", e);
+        }
+    }
+
+    // 只在 EDT 上调用
+    private static JTextComponent createComponent(@Nullable EditorKit kit, Document document) {
+        if (kit == null) {
+            JTextArea area = new JTextArea(document);
+            ((DefaultCaret) area.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+            area.setEditable(false);
+            area.setOpaque(false);
+            area.setLineWrap(true);
+            area.setWrapStyleWord(true);
+            area.setMargin(new Insets(0, 10, 0, 10));
+            area.setFont(new Font("Monospaced", Font.PLAIN, 13));
+            return area;
+        }
+        JEditorPane pane = new JEditorPane();
+        pane.setEditable(false);
+        pane.setOpaque(false);
+        pane.setEditorKit(kit);
+        // 设置文档时光标会跟着移动并把所在位置滚动到可见，行组件不能去滚动外层视口
+        ((DefaultCaret) pane.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+        pane.setDocument(document);
+        return pane;
+    }
+
+    // 释放行的组件，正在进行的后台构建结果也会被丢弃
+    private void release(Row row) {
+        if (row.component != null) {
+            remove(row.component);
+            row.component = null;
+        }
+        row.building = false;
+        row.token++;
+    }
+
+    private void releaseAll() {
+        for (Row row : rows) {
+            release(row);
+        }
+    }
+
+    @TestOnly
+    int getRealizedRowCount() {
+        int count = 0;
+        for (Row row : rows) {
+            if (row.component != null) count++;
+        }
+        return count;
+    }
+
+    @TestOnly
+    boolean isBuildingRows() {
+        for (Row row : rows) {
+            if (row.building) return true;
+        }
+        return false;
+    }
+
+    @TestOnly
+    int getRowHeight(int row) {
+        JTextComponent component = rows.get(row).component;
+        return component == null ? -1 : component.getHeight();
+    }
+
+    @TestOnly
+    int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(getWidth(), totalHeight);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return ESTIMATED_LINE_HEIGHT;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    // 一行：问题标题、一个回答或“没有更多回答”的提示
+    private static final class Row {
+        final int index;
+        int height = -1;
+        int measuredWidth = -1;
+        @Nullable JTextComponent component;
+        boolean building;
+        int token; // 每次释放时递增，用来丢弃过期的后台构建结果
+
+        Row(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.newnovicechen.zhihureader.toolWindow;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.utils.AnswerContent;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.github.newnovicechen.zhihureader.toolWindow.ZhihuToolWindowFactory.htmlToPlainText;
+
+/**
+ * 当前显示的一页回答。每个回答的 HTML 和纯文本两种形式都由同一个 {@link AnswerContent} 生成，正文只解析一次，
+ * 切换显示模式时直接复用，不需要重新请求。
+ * <p>
+ * 逐个加载时页面从空开始，回答到达后通过 {@link #add} 追加，全部到达后调用 {@link #markComplete()}。
+ * 只在 EDT 上访问。
+ */
+final class AnswerPageView {
+    static final String NO_ANSWER_HTML = "<p>没有找到更多回答。</p>";
+
+    private final Question question;
+    private final int offset;
+    private final int imageMaxWidth;
+    private final List<Answer> answers = new ArrayList<>();
+    // 与 answers 一一对应
+    private final List<AnswerContent> contents = new ArrayList<>();
+    private boolean complete;
+
+    /**
+     * 空页面，回答逐个追加。
+     */
+    AnswerPageView(Question question, int offset, int imageMaxWidth) {
+        this.question = question;
+        this.offset = offset;
+        this.imageMaxWidth = imageMaxWidth;
+    }
+
+    /**
+     * 已经完整加载的页面。
+     */
+    AnswerPageView(Question question, int offset, List<Answer> answers, int imageMaxWidth) {
+        this(question, offset, imageMaxWidth);
+        for (Answer a : answers) {
+            add(a, null);
+        }
+        markComplete();
+    }
+
+    Question getQuestion() {
+        return question;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    List<Answer> getAnswers() {
+        return answers;
+    }
+
+    int size() {
+        return answers.size();
+    }
+
+    /**
+     * 追加一个回答。content 已经在加载线程上处理过的，直接传入；为 null 时在第一次显示时处理。
+     */
+    void add(Answer answer, @Nullable AnswerContent content) {
+        answers.add(answer);
+        contents.add(content != null ? content : AnswerContent.of(answer, imageMaxWidth));
+    }
+
+    void markComplete() {
+        complete = true;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    String answerHtml(int index) {
+        return answerSource(index, true).get();
+    }
+
+    String answerPlainText(int index) {
+        return answerSource(index, false).get();
+    }
+
+    /**
+     * 取出生成回答片段需要的数据，返回的 Supplier 不再访问页面，可以在后台线程上调用。
+     */
+    Supplier<String> answerSource(int index, boolean html) {
+        int number = offset + index + 1;
+        String authorName = answers.get(index).getAuthorName();
+        AnswerContent content = contents.get(index);
+        return html ? () -> htmlAnswer(number, authorName, content) : () -> plainAnswer(number, authorName, content);
+    }
+
+    /**
+     * 整页的 HTML，由各个回答的片段拼接而成。
+     */
+    String html() {
+        StringBuilder htmlSb = new StringBuilder();
+        htmlSb.append("<html><body>").append(htmlHeader(question));
+        if (complete && answers.isEmpty()) {
+            htmlSb.append(NO_ANSWER_HTML);
+        }
+        for (int i = 0; i < answers.size(); i++) {
+            htmlSb.append(answerHtml(i));
+        }
+        htmlSb.append("</body></html>");
+        return htmlSb.toString();
+    }
+
+    /**
+     * 整页的纯文本，由各个回答的片段拼接而成。
+     */
+    String plainText() {
+        StringBuilder plainTextSb = new StringBuilder();
+        plainTextSb.append(plainHeader(question));
+        if (complete && answers.isEmpty()) {
+            plainTextSb.append(htmlToPlainText(NO_ANSWER_HTML));
+        }
+        for (int i = 0; i < answers.size(); i++) {
+            plainTextSb.append(answerPlainText(i));
+        }
+        return plainTextSb.toString();
+    }
+
+    // 以下片段既用于拼接整页，也用于逐个回答渲染
+
+    static String htmlHeader(Question question) {
+        return "<h2>问题：" + question.getTitle() + "</h2><hr/>";
+    }
+
+    static String htmlAnswer(int number, String authorName, AnswerContent content) {
+        return "<div class='answer-container'>"
+                + "<h3>回答 " + number + " - 作者：" + authorName + "</h3>"
+                + content.swingHtml() // 使用处理过的 HTML，图片宽度已经限制
+                + "</div>";
+    }
+
+    static String plainHeader(Question question) {
+        return "问题：" + question.getTitle() + "\n\n";
+    }
+
+    static String plainAnswer(int number, String authorName, AnswerContent content) {
+        return "=== 回答 " + number + " ===\n"
+                + "作者：" + authorName + "\n\n"
+                + content.plainText() + "\n\n";
+    }
+}
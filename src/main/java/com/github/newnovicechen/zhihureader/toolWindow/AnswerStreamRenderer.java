@@ -0,0 +1,87 @@
+package com.github.newnovicechen.zhihureader.toolWindow;
+
+import com.github.newnovicechen.zhihureader.model.Answer;
+import com.github.newnovicechen.zhihureader.utils.AnswerContent;
+import com.github.newnovicechen.zhihureader.utils.HttpMetrics;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把一页回答逐个追加到 {@link AnswerPageView}，先到的回答先显示，不必等整页加载完。
+ * <p>
+ * {@link #prepare} 在加载线程上解析单个回答，一次生成 HTML 和纯文本两种形式，EDT 上不再做 HTML 处理；
+ * {@link #append} 在 EDT 上把结果加入页面，同时记录首个回答显示出来的耗时。
+ */
+final class AnswerStreamRenderer {
+    private static final Logger LOG = Logger.getInstance(AnswerStreamRenderer.class);
+
+    private final AnswerPageView page;
+    private final int imageMaxWidth;
+    private final long startNanos = System.nanoTime();
+
+    // 以下只在 EDT 上访问
+    private long firstAnswerNanos = -1;
+    private long pageNanos = -1;
+
+    AnswerStreamRenderer(AnswerPageView page, int imageMaxWidth) {
+        this.page = page;
+        this.imageMaxWidth = imageMaxWidth;
+    }
+
+    AnswerPageView getPage() {
+        return page;
+    }
+
+    /**
+     * 在加载线程上处理回答正文，可以在任意线程调用。
+     */
+    AnswerContent prepare(Answer answer) {
+        long start = System.nanoTime();
+        AnswerContent content = AnswerContent.of(answer, imageMaxWidth).process();
+        HttpMetrics.shared().record(HttpMetrics.Phase.RENDER, System.nanoTime() - start);
+        return content;
+    }
+
+    /**
+     * 在 EDT 上把回答和处理好的正文加入页面。
+     */
+    void append(Answer answer, AnswerContent content) {
+        page.add(answer, content);
+        if (firstAnswerNanos < 0) {
+            firstAnswerNanos = System.nanoTime() - startNanos;
+            HttpMetrics.shared().record(HttpMetrics.Phase.FIRST_ANSWER, firstAnswerNanos);
+        }
+    }
+
+    /**
+     * 整页加载完成，补上没有逐个追加的回答并标记页面完成。
+     */
+    AnswerPageView finish(List<Answer> answers) {
+        for (int i = page.size(); i < answers.size(); i++) {
+            page.add(answers.get(i), null);
+        }
+        page.markComplete();
+        pageNanos = System.nanoTime() - startNanos;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("问题 " + page.getQuestion().getId() + " offset " + page.getOffset() + "：首个回答 "
+                    + getTimeToFirstAnswerMillis() + " ms，整页 " + getPageMillis() + " ms");
+        }
+        return page;
+    }
+
+    /**
+     * 从开始加载到第一个回答加入页面的耗时，还没有回答时返回 -1。
+     */
+    long getTimeToFirstAnswerMillis() {
+        return firstAnswerNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(firstAnswerNanos);
+    }
+
+    /**
+     * 从开始加载到整页加载完成的耗时，还没有完成时返回 -1。
+     */
+    long getPageMillis() {
+        return pageNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(pageNanos);
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.newnovicechen.zhihureader.toolWindow;
+
+import com.github.newnovicechen.zhihureader.services.ImageLoader;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.text.*;
+import javax.swing.text.html.HTML;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * 替代 Swing 自带 ImageView 的图片视图。
+ * <p>
+ * 第一次绘制时才通过 {@link ImageLoader} 在后台加载图片，加载完成前显示占位框。占位框的大小
+ * 尽量取自知乎的 data-rawwidth/data-rawheight，图片加载完成后版面不需要跳动。
+ */
+final class AsyncImageView extends View {
+    private static final int PLACEHOLDER_HEIGHT = 120;
+    private static final Color PLACEHOLDER_COLOR = new Color(0x80808040, true);
+
+    private final ImageLoader loader;
+    private final @Nullable String url;
+    private final int maxWidth;
+    private final int placeholderWidth;
+    private final int placeholderHeight;
+    private final String alt;
+
+    private @Nullable BufferedImage image;
+    private boolean requested;
+    private boolean failed;
+
+    AsyncImageView(Element elem, ImageLoader loader, int maxWidth) {
+        super(elem);
+        this.loader = loader;
+        AttributeSet attrs = elem.getAttributes();
+        this.url = normalizeUrl((String) attrs.getAttribute(HTML.Attribute.SRC));
+        // width 属性是预处理时写入的最大显示宽度
+        int width = parseInt(attrs.getAttribute(HTML.Attribute.WIDTH), maxWidth);
+        this.maxWidth = Math.max(1, Math.min(width, maxWidth));
+        int rawWidth = parseInt(attrs.getAttribute("data-rawwidth"), -1);
+        int rawHeight = parseInt(attrs.getAttribute("data-rawheight"), -1);
+        if (rawWidth > 0 && rawHeight > 0) {
+            this.placeholderWidth = Math.min(rawWidth, this.maxWidth);
+            this.placeholderHeight = Math.max(1, (int) ((long) rawHeight * placeholderWidth / rawWidth));
+        } else {
+            this.placeholderWidth = this.maxWidth;
+            this.placeholderHeight = PLACEHOLDER_HEIGHT;
+        }
+        Object altAttr = attrs.getAttribute(HTML.Attribute.ALT);
+        this.alt = altAttr instanceof String s && !s.isEmpty() ? s : "图片";
+        this.image = url == null ? null : loader.getCached(url, this.maxWidth);
+        this.failed = url == null;
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        BufferedImage img = image;
+        if (axis == X_AXIS) {
+            return img != null ? img.getWidth() : placeholderWidth;
+        }
+        return img != null ? img.getHeight() : placeholderHeight;
+    }
+
+    @Override
+    public void paint(Graphics g, Shape allocation) {
+        Rectangle r = allocation instanceof Rectangle rect ? rect : allocation.getBounds();
+        BufferedImage img = image;
+        if (img != null) {
+            g.drawImage(img, r.x, r.y, null);
+            return;
+        }
+        requestImage();
+        g.setColor(PLACEHOLDER_COLOR);
+        g.fillRect(r.x, r.y, r.width, r.height);
+        g.setColor(Color.GRAY);
+        g.drawRect(r.x, r.y, r.width - 1, r.height - 1);
+        String label = failed ? alt + "（加载失败）" : alt + "（加载中…）";
+        FontMetrics fm = g.getFontMetrics();
+        g.drawString(label, r.x + 6, r.y + Math.min(r.height - 4, fm.getAscent() + 4));
+    }
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        int p0 = getStartOffset();
+        int p1 = getEndOffset();
+        if (pos >= p0 && pos <= p1) {
+            Rectangle r = a.getBounds();
+            if (pos == p1) {
+                r.x += r.width;
+            }
+            r.width = 0;
+            return r;
+        }
+        throw new BadLocationException("位置不在图片内", pos);
+    }
+
+    @Override
+    public int viewToModel(float x, float y, Shape a, Position.Bias[] bias) {
+        Rectangle r = a.getBounds();
+        if (x < r.x + r.width / 2f) {
+            bias[0] = Position.Bias.Forward;
+            return getStartOffset();
+        }
+        bias[0] = Position.Bias.Backward;
+        return getEndOffset();
+    }
+
+    // 只在 EDT 上调用：第一次绘制时才开始加载，不在可见区域的图片不会被下载
+    private void requestImage() {
+        if (requested || failed || url == null) {
+            return;
+        }
+        requested = true;
+        loader.load(url, maxWidth).whenComplete((img, e) -> SwingUtilities.invokeLater(() -> {
+            image = img;
+            failed = img == null;
+            Container container = getContainer();
+            if (container == null) {
+                return;
+            }
+            Document doc = getDocument();
+            if (doc instanceof AbstractDocument ad) {
+                ad.readLock();
+            }
+            try {
+                if (getParent() != null) {
+                    preferenceChanged(null, true, true);
+                }
+            } finally {
+                if (doc instanceof AbstractDocument ad) {
+                    ad.readUnlock();
+                }
+            }
+            container.repaint();
+        }));
+    }
+
+    private static @Nullable String normalizeUrl(@Nullable String src) {
+        if (src == null || src.isEmpty() || src.startsWith("data:")) {
+            return null; // 知乎懒加载用的内联占位图，真实地址在预处理时已经换到 src 上
+        }
+        if (src.startsWith("//")) {
+            return "https:" + src;
+        }
+        return src.startsWith("http://") || src.startsWith("https://") ? src : null;
+    }
+
+    private static int parseInt(@Nullable Object value, int defaultValue) {
+        if (value instanceof String s) {
+            try {
+                return Integer.parseInt(s.trim());
+            } catch (NumberFormatException ignored) {
+                // 比如 height="auto"
+            }
+        }
+        return defaultValue;
+    }
+}
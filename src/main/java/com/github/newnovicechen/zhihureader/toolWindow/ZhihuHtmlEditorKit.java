@@ -0,0 +1,34 @@
+package com.github.newnovicechen.zhihureader.toolWindow;
+
+import com.github.newnovicechen.zhihureader.services.ImageLoader;
+
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLEditorKit;
+
+/**
+ * HTML 模式使用的 EditorKit，图片由 {@link AsyncImageView} 异步加载，其余元素沿用 Swing 默认的视图。
+ */
+final class ZhihuHtmlEditorKit extends HTMLEditorKit {
+    private final ViewFactory viewFactory;
+
+    ZhihuHtmlEditorKit(ImageLoader loader, int imageMaxWidth) {
+        this.viewFactory = new HTMLFactory() {
+            @Override
+            public View create(Element elem) {
+                if (elem.getAttributes().getAttribute(StyleConstants.NameAttribute) == HTML.Tag.IMG) {
+                    return new AsyncImageView(elem, loader, imageMaxWidth);
+                }
+                return super.create(elem);
+            }
+        };
+    }
+
+    @Override
+    public ViewFactory getViewFactory() {
+        return viewFactory;
+    }
+}
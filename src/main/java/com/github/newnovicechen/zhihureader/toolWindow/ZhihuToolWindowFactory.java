@@ -1,11 +1,19 @@
 package com.github.newnovicechen.zhihureader.toolWindow;
 
+import com.github.newnovicechen.zhihureader.exception.ContentException;
 import com.github.newnovicechen.zhihureader.model.Question;
+import com.github.newnovicechen.zhihureader.services.ImageLoader;
+import com.github.newnovicechen.zhihureader.services.RecommendFeed;
+import com.github.newnovicechen.zhihureader.services.SearchIndex;
 import com.github.newnovicechen.zhihureader.services.ZhihuService;
+import com.github.newnovicechen.zhihureader.utils.AnswerContent;
+import com.github.newnovicechen.zhihureader.utils.Futures;
+import com.github.newnovicechen.zhihureader.utils.RequestGroup;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages; // 引入 Messages 类
 import com.intellij.openapi.wm.ToolWindow;
@@ -15,15 +23,17 @@ import com.intellij.ui.content.ContentFactory;
 import com.intellij.util.xmlb.XmlSerializerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.jetbrains.annotations.TestOnly;
+import org.jsoup.nodes.Entities;
 
 import javax.swing.*;
 import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.StyleSheet;
 import java.awt.*;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 // 定义一个存储阅读模式状态的服务
 // 这样每次IDE重启，工具窗口能记住上次的阅读模式
@@ -34,6 +44,8 @@ import java.util.List;
 final class ZhihuReaderSettings implements PersistentStateComponent<ZhihuReaderSettings> {
     public boolean isHtmlMode = true; // 默认HTML模式
     public String zhihuCookie = ""; // 添加知乎Cookie字段
+    public boolean prefetchRecommended = false; // 加载推荐后是否预取前几个问题的第一页
+    public int offlineDownloadPages = 5; // 离线下载默认下载的页数
 
     public static ZhihuReaderSettings getInstance() {
         return ApplicationManager.getApplication().getService(ZhihuReaderSettings.class);
@@ -54,52 +66,22 @@ final class ZhihuReaderSettings implements PersistentStateComponent<ZhihuReaderS
 public class ZhihuToolWindowFactory implements ToolWindowFactory {
     // 辅助方法：将 HTML 转换为纯文本，保留了段落和列表的换行
     public static String htmlToPlainText(String html) {
-        if (html == null) return "";
-        Document doc = Jsoup.parse(html);
-
-        // 把段落/换行类标签转换成换行，避免全挤在一行
-        for (Element br : doc.select("br")) br.after("\n");
-        for (Element p : doc.select("p")) p.after("\n");
-        for (Element li : doc.select("li")) li.prepend("• ").after("\n");
-
-        String text = doc.text();
-
-        // doc.text() 会把 \n 吃掉，这里用 wholeText 取文本并保留我们插入的换行
-        text = doc.body().wholeText();
-
-        return text.replace("\u00A0", " ").trim(); // &nbsp;
+        return new AnswerContent(html, 0).plainText();
     }
 
     /**
      * 预处理 HTML 内容，强制限制图片的宽度以适应 Swing 的 JEditorPane 渲染。
-     * 对于图片，直接设置 width 属性，并保持 height 为 auto。
+     * 对于图片，直接设置 width 属性，并保持 height 为 auto；width 由 {@link AsyncImageView} 作为最大显示宽度。
+     * 知乎懒加载图片的真实地址会换到 src 上。
+     * <p>
+     * 同一个回答两种形式都需要时，直接使用 {@link AnswerContent}，只解析一次。
      *
      * @param htmlContent 原始 HTML 字符串
      * @param maxWidth 图片的最大宽度限制（像素）
      * @return 处理后的 HTML 字符串
      */
     public static String preprocessHtmlForSwing(String htmlContent, int maxWidth) {
-        if (htmlContent == null || htmlContent.isEmpty()) {
-            return "";
-        }
-        Document doc = Jsoup.parse(htmlContent);
-
-        // 遍历所有 img 标签
-        for (Element img : doc.select("img")) {
-            // 移除可能存在的 style 属性中的 width/height/max-width
-            String style = img.attr("style");
-            if (style != null && !style.isEmpty()) {
-                style = style.replaceAll("width:[^;]+;?", "");
-                style = style.replaceAll("height:[^;]+;?", "");
-                style = style.replaceAll("max-width:[^;]+;?", "");
-                img.attr("style", style);
-            }
-
-            // 强制设置 width 属性，让 JEditorPane 直接使用这个固定宽度
-            img.attr("width", String.valueOf(maxWidth));
-            img.attr("height", "auto"); // 保持高度自动调整，防止变形
-        }
-        return doc.body().html(); // 返回修改后的 body 内部 HTML
+        return new AnswerContent(htmlContent, maxWidth).swingHtml();
     }
 
 
@@ -145,11 +127,29 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
 
         private static final String HTML_MODE_CARD = "HTML_MODE";
         private static final String PLAIN_TEXT_MODE_CARD = "PLAIN_TEXT_MODE";
+        private static final String ANSWER_LIST_CARD = "ANSWER_LIST"; // 回答页，两种模式共用虚拟化列表
 
         private boolean isHtmlMode; // 当前是否为HTML模式
 
+        // 当前页的回答模型，切换模式时直接用它渲染，不再重新请求
+        private @Nullable AnswerPageView currentPage;
+        // 只为视口内的回答创建组件，htmlTextPane/plainTextPane 只用来显示提示信息
+        private final AnswerListView answerListView;
+
+        // 进行中的加载，发起新的加载时取消旧的请求，并丢弃旧请求迟到的结果
+        private RequestGroup answerLoad = new RequestGroup();
+        private RequestGroup recommendLoad = new RequestGroup();
+
+        // 推荐流的翻页游标，滚动到列表底部时继续加载
+        private @Nullable RecommendFeed recommendFeed;
+        private boolean loadingMoreRecommend;
+        private int duplicatePagesInARow; // 连续整页都是重复问题的次数
+        private static final int MAX_DUPLICATE_PAGES = 3;
+        private static final int LOAD_MORE_THRESHOLD_ROWS = 3; // 距离底部还剩几行时开始加载下一页
+
         // 分页相关字段
-        private static final int PAGE_SIZE = 10;
+        // 界面每页显示的回答数。服务端每次请求取多少个回答由 ZhihuService 决定，和这里的翻页无关
+        private static final int PAGE_SIZE = ZhihuService.ANSWER_PAGE_SIZE;
         private int offsetCurrent = 0;
         private final JLabel pageLabel = new JLabel("页: 1");
 
@@ -158,14 +158,25 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
         private JButton nextBtn;
         private JButton toggleModeBtn; // 切换模式按钮
         private JButton setCookieBtn; // 设置Cookie按钮
+        private JButton offlineBtn; // 离线下载按钮，下载进行中时用于取消
+        private JButton diagnosticsBtn; // 查看请求耗时等诊断信息
+        private static final String OFFLINE_BUTTON_TEXT = "离线下载";
+        private static final Logger LOG = Logger.getInstance(ZhihuToolWindowFactory.class);
+        // 进行中的离线下载，没有下载时为 null
+        private @Nullable RequestGroup offlineDownload;
+        private final JTextField searchField = new JTextField(12); // 在读过的内容中搜索
+        private static final int SEARCH_RESULT_LIMIT = 50;
+        private RequestGroup searchLoad = new RequestGroup();
 
         // 定义图片的最大宽度，这个值应该根据你的工具窗口右侧面板的预期宽度来设定
         // 例如，如果右侧面板在正常情况下是800px宽，减去padding和边框，图片最大宽度可以设置为750-780px
         private static final int IMAGE_MAX_WIDTH = 600; // 预设一个合理的图片最大宽度
+        private static final int PREFETCH_QUESTION_COUNT = 3; // 推荐加载后预取的问题数量
 
         ZhihuPanel(Project project) {
             this.project = project;
             this.zhihuService = project.getService(ZhihuService.class); // 获取ZhihuService实例
+            this.answerListView = new AnswerListView(() -> new ZhihuHtmlEditorKit(ImageLoader.shared(), IMAGE_MAX_WIDTH));
 
             // 从设置中加载上次的模式
             ZhihuReaderSettings settings = ZhihuReaderSettings.getInstance();
@@ -192,8 +203,8 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             htmlTextPane.setContentType("text/html");
             htmlTextPane.setOpaque(false);
 
-            // HTMLEditorKit 和 StyleSheet 配置
-            HTMLEditorKit kit = new HTMLEditorKit();
+            // HTMLEditorKit 和 StyleSheet 配置，图片在后台加载并按显示宽度缩小
+            HTMLEditorKit kit = new ZhihuHtmlEditorKit(ImageLoader.shared(), IMAGE_MAX_WIDTH);
             StyleSheet styleSheet = kit.getStyleSheet();
             // 这里的 max-width: 100% 依然保留，作为辅助，但主要由预处理的 width 属性控制
             styleSheet.addRule("img { max-width: 100%; height: auto; display: block; margin: 0 auto; }");
@@ -209,10 +220,22 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             // 将两种模式的组件添加到 CardLayout 面板
             contentPanel.add(new JScrollPane(htmlTextPane), HTML_MODE_CARD);
             contentPanel.add(new JScrollPane(plainTextPane), PLAIN_TEXT_MODE_CARD);
+            contentPanel.add(new JScrollPane(answerListView), ANSWER_LIST_CARD);
+
+            // 滚动到接近底部时自动加载更多推荐
+            JScrollPane menuScrollPane = new JScrollPane(menuList);
+            menuScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+                BoundedRangeModel model = menuScrollPane.getVerticalScrollBar().getModel();
+                Rectangle firstRow = menuList.getCellBounds(0, 0);
+                int rowHeight = firstRow != null ? firstRow.height : 20;
+                if (model.getValue() + model.getExtent() >= model.getMaximum() - LOAD_MORE_THRESHOLD_ROWS * rowHeight) {
+                    loadMoreRecommend();
+                }
+            });
 
             JSplitPane splitPane = new JSplitPane(
                     JSplitPane.HORIZONTAL_SPLIT,
-                    new JScrollPane(menuList),
+                    menuScrollPane,
                     contentPanel
             );
             splitPane.setDividerLocation(260);
@@ -248,6 +271,17 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             setCookieBtn = new JButton("设置Cookie");
             setCookieBtn.addActionListener(e -> showCookieInputDialog());
 
+            // 离线下载按钮：把选中问题的前几页回答保存到本地，没有网络时也能阅读
+            offlineBtn = new JButton(OFFLINE_BUTTON_TEXT);
+            offlineBtn.addActionListener(e -> downloadSelectedQuestion());
+
+            // 诊断按钮：查看各阶段的耗时分布，可以写入 IDE 日志
+            diagnosticsBtn = new JButton("诊断");
+            diagnosticsBtn.addActionListener(e -> showDiagnostics());
+
+            // 搜索框：回车后在读过的问题标题、作者和回答正文中搜索
+            searchField.setToolTipText("搜索读过的问题和回答，回车开始搜索");
+            searchField.addActionListener(e -> search(searchField.getText()));
 
             JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
             top.add(setCookieBtn); // 将设置Cookie按钮放在最前面
@@ -256,12 +290,15 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             top.add(nextBtn);
             top.add(pageLabel);
             top.add(toggleModeBtn); // 添加切换按钮
+            top.add(offlineBtn);
+            top.add(searchField);
+            top.add(diagnosticsBtn);
 
             root.add(top, BorderLayout.NORTH);
             root.add(splitPane, BorderLayout.CENTER);
 
             // 初始化显示模式
-            cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+            showContentCard();
 
             // 点击左侧项 -> 更新右侧文本
             menuList.addListSelectionListener(e -> {
@@ -277,14 +314,14 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
                 offsetCurrent = 0;
                 updatePageLabel();
                 prevBtn.setEnabled(false); // 选中新问题时，上一页按钮通常禁用
+                zhihuService.prefetcher().cancelAll(); // 之前问题的预取已经没有意义
 
                 // 统一设置加载中提示
                 String loadingText = "加载回答中...\n\n" + q.getTitle();
-                htmlTextPane.setText("<html><body><h2>" + loadingText.replace("\n", "<br/>") + "</h2></body></html>");
-                plainTextPane.setText(loadingText);
+                setPaneTexts("<html><body><h2>" + loadingText.replace("\n", "<br/>") + "</h2></body></html>", loadingText);
 
                 // 根据当前模式显示对应的面板
-                cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+                showContentCard();
 
                 loadSelectedQuestionAnswers(); // 异步加载答案并更新
             });
@@ -306,7 +343,7 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             toggleModeBtn.setText(isHtmlMode ? "切换到纯文本模式" : "切换到HTML模式");
         }
 
-        private void toggleDisplayMode() {
+        void toggleDisplayMode() {
             isHtmlMode = !isHtmlMode;
             updateToggleModeButtonText(); // 更新按钮文本
 
@@ -315,25 +352,25 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             settings.isHtmlMode = isHtmlMode;
 
             // 切换卡片显示
-            cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+            showContentCard();
 
-            // 重新加载当前选中的问题答案，以在新模式下显示
+            // 已经加载过的页面直接在新模式下渲染，不需要重新请求
             Question selectedQuestion = menuList.getSelectedValue();
-            if (selectedQuestion != null) {
+            if (currentPage != null) {
+                showCurrentPage();
+            } else if (selectedQuestion != null) {
                 loadSelectedQuestionAnswers();
             } else {
                 // 如果没有选中问题，清空内容或显示默认提示
                 String welcomeText = "<html><body><p>加载完成，左侧选择一个条目。</p></body></html>";
-                htmlTextPane.setText(welcomeText);
-                plainTextPane.setText(htmlToPlainText(welcomeText));
+                setPaneTexts(welcomeText, htmlToPlainText(welcomeText));
             }
         }
 
         // 显示需要Cookie的提示信息
         private void showCookieRequiredMessage() {
             String msg = "请先点击“设置Cookie”按钮，输入Cookie才能使用插件。";
-            htmlTextPane.setText("<html><body><p style='color:red;'>" + msg + "</p></body></html>");
-            plainTextPane.setText(msg);
+            setPaneTexts("<html><body><p style='color:red;'>" + msg + "</p></body></html>", msg);
             listModel.clear(); // 清空列表
         }
 
@@ -414,83 +451,238 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
 
             // 设置加载中提示
             String loadingText = "加载回答中...\n\n" + q.getTitle();
-            htmlTextPane.setText("<html><body><h2>" + loadingText.replace("\n", "<br/>") + "</h2></body></html>");
-            plainTextPane.setText(loadingText);
+            setPaneTexts("<html><body><h2>" + loadingText.replace("\n", "<br/>") + "</h2></body></html>", loadingText);
+            int offset = offsetCurrent;
+            RequestGroup group = startAnswerLoad();
+            AnswerStreamRenderer renderer = new AnswerStreamRenderer(new AnswerPageView(q, offset, IMAGE_MAX_WIDTH), IMAGE_MAX_WIDTH);
+
+            // 异步加载，等待网络期间不占用线程；每个回答就绪后立即在回调线程上处理正文并追加显示，不等整页加载完
+            zhihuService.zhihuAnswerAsync(q.getId(), offset, group, answer -> {
+                AnswerContent content = renderer.prepare(answer);
+                SwingUtilities.invokeLater(() -> {
+                    if (group.isCancelled()) return;
+                    renderer.append(answer, content);
+                    if (currentPage != renderer.getPage()) {
+                        // 第一个回答到达，用回答页替换加载提示
+                        currentPage = renderer.getPage();
+                        showCurrentPage();
+                    } else {
+                        answerListView.pageChanged();
+                    }
+                });
+            }).whenComplete((answers, error) -> SwingUtilities.invokeLater(() -> {
+                if (group.isCancelled()) return; // 已经切换到别的问题或页码
+                Throwable cause = error == null ? null : Futures.unwrap(error);
+                if (cause instanceof CancellationException) {
+                    // 加载被新的请求取消，结果直接丢弃
+                    return;
+                }
+                if (cause instanceof ContentException) { // 正文损坏，和 Cookie、网络无关
+                    setPaneTexts("<html><body><b>加载失败：</b><br/>" + cause.getMessage() + "</body></html>", "加载失败：\n" + cause.getMessage());
+                    showContentCard();
+                    updateFunctionalityButtonsState();
+                    return;
+                }
+                if (cause instanceof IllegalStateException) { // Service抛出的Cookie未设置异常
+                    showCookieRequiredMessage();
+                    updateFunctionalityButtonsState();
+                    return;
+                }
+                if (cause != null) {
+                    String errorHtml = "<html><body><b>加载失败：</b><br/>" + cause.getMessage() + "<br/>请检查Cookie是否有效或网络连接。</body></html>";
+                    String errorPlainText = "加载失败：\n" + cause.getMessage() + "\n请检查Cookie是否有效或网络连接。";
+                    setPaneTexts(errorHtml, errorPlainText);
 
-            ApplicationManager.getApplication().executeOnPooledThread(() -> {
-                try {
-                    // ZhihuService service = project.getService(ZhihuService.class); // 已持有引用，直接使用
-                    List<com.github.newnovicechen.zhihureader.model.Answer> answers =
-                            zhihuService.zhihuAnswer(q.getId(), offsetCurrent);
+                    showContentCard();
+                    updateFunctionalityButtonsState();
+                    return;
+                }
+                currentPage = renderer.finish(answers);
+                showCurrentPage();
+                answerListView.pageChanged();
+                if (renderer.getTimeToFirstAnswerMillis() >= 0) {
+                    pageLabel.setToolTipText("首个回答 " + renderer.getTimeToFirstAnswerMillis() + " ms，整页 " + renderer.getPageMillis() + " ms");
+                }
+                nextBtn.setEnabled(answers.size() == PAGE_SIZE); // 只有当返回的数量达到PAGE_SIZE时才认为可能有下一页
+                if (answers.size() == PAGE_SIZE) {
+                    // 阅读当前页时在后台加载下一页
+                    zhihuService.prefetcher().prefetchNextPage(q.getId(), offset);
+                }
 
-                    SwingUtilities.invokeLater(() -> {
-                        StringBuilder htmlSb = new StringBuilder();
-                        StringBuilder plainTextSb = new StringBuilder();
+                // 无论如何，更新按钮状态（例如，如果没有答案，下一页按钮应禁用）
+                updateFunctionalityButtonsState();
+            }));
+        }
 
-                        htmlSb.append("<html><body>");
-                        htmlSb.append("<h2>问题：").append(q.getTitle()).append("</h2>");
-                        htmlSb.append("<hr/>");
+        // 显示请求和页面加载的耗时统计，可以选择写入 idea.log 方便反馈问题
+        void showDiagnostics() {
+            String report = zhihuService.diagnosticsReport();
+            JTextArea text = new JTextArea(report, 24, 90);
+            text.setEditable(false);
+            text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, text.getFont().getSize()));
+            Object[] options = {"写入日志", "关闭"};
+            int choice = JOptionPane.showOptionDialog(root, new JScrollPane(text), "诊断信息",
+                    JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+            if (choice == 0) {
+                LOG.info("知乎阅读器诊断信息\n" + report);
+            }
+        }
 
-                        plainTextSb.append("问题：").append(q.getTitle()).append("\n\n");
+        // 在后台下载选中问题的前几页回答到离线存储；下载进行中时再次点击取消下载
+        void downloadSelectedQuestion() {
+            RequestGroup running = offlineDownload;
+            if (running != null) {
+                running.cancel();
+                return;
+            }
+            Question q = menuList.getSelectedValue();
+            if (q == null) {
+                JOptionPane.showMessageDialog(root, "请先在左侧选择一个问题。", OFFLINE_BUTTON_TEXT, JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            if (!zhihuService.isCookieSetAndValid()) {
+                showCookieRequiredMessage();
+                return;
+            }
+            ZhihuReaderSettings settings = ZhihuReaderSettings.getInstance();
+            String input = JOptionPane.showInputDialog(root, "下载「" + q.getTitle() + "」的前几页回答：", settings.offlineDownloadPages);
+            if (input == null) return; // 用户取消
+            int pages;
+            try {
+                pages = Integer.parseInt(input.trim());
+            } catch (NumberFormatException ex) {
+                pages = 0;
+            }
+            if (pages <= 0) {
+                JOptionPane.showMessageDialog(root, "请输入大于0的页数。", OFFLINE_BUTTON_TEXT, JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            settings.offlineDownloadPages = pages;
 
+            RequestGroup group = new RequestGroup();
+            offlineDownload = group;
+            int total = pages;
+            offlineBtn.setText("取消下载 0/" + total);
+            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                String result;
+                try {
+                    int saved = zhihuService.downloadForOffline(q, total, group, n -> SwingUtilities.invokeLater(() -> {
+                        if (offlineDownload == group) offlineBtn.setText("取消下载 " + n + "/" + total);
+                    }));
+                    result = "已离线保存 " + saved + " 页";
+                } catch (CancellationException ex) {
+                    result = "离线下载已取消";
+                } catch (Exception ex) {
+                    result = "离线下载失败：" + ex.getMessage();
+                }
+                String message = "「" + q.getTitle() + "」" + result;
+                SwingUtilities.invokeLater(() -> {
+                    if (offlineDownload != group) return;
+                    offlineDownload = null;
+                    offlineBtn.setText(OFFLINE_BUTTON_TEXT);
+                    offlineBtn.setToolTipText(message);
+                });
+            });
+        }
 
-                        if (answers.isEmpty()) {
-                            String noAnswerText = "<p>没有找到更多回答。</p>";
-                            htmlSb.append(noAnswerText);
-                            plainTextSb.append(htmlToPlainText(noAnswerText));
-                            nextBtn.setEnabled(false); // 如果当前页没有答案，下一页禁用
-                        } else {
-                            int i = offsetCurrent + 1;
-                            for (var a : answers) {
-                                // 预处理 HTML 内容，限制图片宽度
-                                String processedHtmlContent = preprocessHtmlForSwing(a.getAnswerContent(), IMAGE_MAX_WIDTH);
-
-                                // HTML 模式内容
-                                htmlSb.append("<div class='answer-container'>")
-                                        .append("<h3>回答 ").append(i).append(" - 作者：").append(a.getAuthorName()).append("</h3>")
-                                        .append(processedHtmlContent) // 使用处理过的 HTML
-                                        .append("</div>");
-
-                                // 纯文本模式内容
-                                plainTextSb.append("=== 回答 ").append(i).append(" ===\n")
-                                        .append("作者：").append(a.getAuthorName()).append("\n\n")
-                                        .append(htmlToPlainText(a.getAnswerContent())).append("\n\n");
-                                i++;
-                            }
-                            nextBtn.setEnabled(answers.size() == PAGE_SIZE); // 只有当返回的数量达到PAGE_SIZE时才认为可能有下一页
-                        }
+        // 在后台搜索读过的内容：左侧列出命中的问题，右侧显示每条命中的摘要
+        void search(String query) {
+            String trimmed = query.trim();
+            if (trimmed.isEmpty()) return;
+            searchLoad.cancel();
+            RequestGroup group = new RequestGroup();
+            searchLoad = group;
+            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                List<SearchIndex.SearchHit> hits = zhihuService.search(trimmed, SEARCH_RESULT_LIMIT);
+                SwingUtilities.invokeLater(() -> {
+                    if (group.isCancelled()) return;
+                    showSearchResults(trimmed, hits);
+                });
+            });
+        }
 
-                        htmlSb.append("</body></html>");
-                        htmlTextPane.setText(htmlSb.toString());
-                        plainTextPane.setText(plainTextSb.toString());
+        private void showSearchResults(String query, List<SearchIndex.SearchHit> hits) {
+            // 搜索结果替换推荐列表，停止推荐流的翻页
+            recommendLoad.cancel();
+            recommendFeed = null;
+            listModel.clear();
+            Map<String, Question> questions = new LinkedHashMap<>();
+            for (SearchIndex.SearchHit hit : hits) {
+                questions.putIfAbsent(hit.questionId(), new Question(hit.questionId(), hit.title()));
+            }
+            listModel.addAll(questions.values());
+
+            StringBuilder html = new StringBuilder("<html><body><h2>搜索「").append(Entities.escape(query))
+                    .append("」：").append(hits.size()).append(" 条结果</h2>");
+            StringBuilder plain = new StringBuilder("搜索「").append(query).append("」：").append(hits.size()).append(" 条结果\n\n");
+            for (SearchIndex.SearchHit hit : hits) {
+                html.append("<h3>").append(Entities.escape(hit.title())).append("</h3>");
+                plain.append(hit.title()).append('\n');
+                if (!hit.isQuestion()) {
+                    String where = "第 " + (hit.offset() / PAGE_SIZE + 1) + " 页 · 回答 " + (hit.offset() + hit.answerIndex() + 1)
+                            + " · 作者：" + hit.authorName();
+                    html.append("<p><i>").append(Entities.escape(where)).append("</i></p><p>")
+                            .append(Entities.escape(hit.snippet())).append("</p>");
+                    plain.append(where).append('\n').append(hit.snippet()).append('\n');
+                }
+                plain.append('\n');
+            }
+            if (hits.isEmpty()) {
+                html.append("<p>没有找到匹配的内容。只能搜索已经加载或离线下载过的回答。</p>");
+                plain.append("没有找到匹配的内容。只能搜索已经加载或离线下载过的回答。");
+            }
+            setPaneTexts(html.append("</body></html>").toString(), plain.toString());
+            updateFunctionalityButtonsState();
+        }
 
-                        // 确保滚动到顶部
-                        htmlTextPane.setCaretPosition(0);
-                        plainTextPane.setCaretPosition(0);
+        // 取消上一次回答加载，返回本次加载使用的请求组
+        private RequestGroup startAnswerLoad() {
+            answerLoad.cancel();
+            answerLoad = new RequestGroup();
+            return answerLoad;
+        }
 
-                        // 切换到正确的视图
-                        cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+        // 在回答列表中显示当前页，列表只为可见的回答生成当前模式的内容
+        private void showCurrentPage() {
+            AnswerPageView page = currentPage;
+            if (page == null) return;
+            answerListView.setHtmlMode(isHtmlMode);
+            if (answerListView.getPage() != page) {
+                answerListView.setPage(page);
+            }
+            showContentCard();
+        }
 
-                        // 无论如何，更新按钮状态（例如，如果没有答案，下一页按钮应禁用）
-                        updateFunctionalityButtonsState();
-                    });
-                } catch (IllegalStateException ex) { // 捕获Service抛出的Cookie未设置异常
-                    SwingUtilities.invokeLater(() -> {
-                        showCookieRequiredMessage();
-                        updateFunctionalityButtonsState();
-                    });
-                } catch (Exception ex) {
-                    SwingUtilities.invokeLater(() -> {
-                        String errorHtml = "<html><body><b>加载失败：</b><br/>" + ex.getMessage() + "<br/>请检查Cookie是否有效或网络连接。</body></html>";
-                        String errorPlainText = "加载失败：\n" + ex.getMessage() + "\n请检查Cookie是否有效或网络连接。";
-                        htmlTextPane.setText(errorHtml);
-                        plainTextPane.setText(errorPlainText);
+        // 有回答页时显示回答列表，否则显示当前模式下的提示信息
+        private void showContentCard() {
+            if (currentPage != null) {
+                cardLayout.show(contentPanel, ANSWER_LIST_CARD);
+            } else {
+                cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+            }
+        }
 
-                        cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
-                        updateFunctionalityButtonsState();
-                    });
-                }
-            });
+        // 两个面板同时显示提示信息，此时不再对应任何回答页
+        private void setPaneTexts(String html, String plainText) {
+            currentPage = null;
+            answerListView.setPage(null); // 释放上一页的组件
+            htmlTextPane.setText(html);
+            plainTextPane.setText(plainText);
+            showContentCard();
+        }
+
+        @TestOnly
+        JList<Question> getMenuList() {
+            return menuList;
+        }
+
+        @TestOnly
+        String getDisplayedText() {
+            AnswerPageView page = currentPage;
+            if (page != null) {
+                return isHtmlMode ? page.html() : page.plainText();
+            }
+            return isHtmlMode ? htmlTextPane.getText() : plainTextPane.getText();
         }
 
         // 初始加载推荐
@@ -504,8 +696,7 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             listModel.clear();
             String loadingHtml = "<html><body><p>加载中...</p></body></html>";
             String loadingPlainText = "加载中...";
-            htmlTextPane.setText(loadingHtml);
-            plainTextPane.setText(loadingPlainText);
+            setPaneTexts(loadingHtml, loadingPlainText);
 
             offsetCurrent = 0;
             updatePageLabel();
@@ -515,50 +706,97 @@ public class ZhihuToolWindowFactory implements ToolWindowFactory {
             nextBtn.setEnabled(false);
 
 
+            recommendLoad.cancel();
+            RequestGroup group = new RequestGroup();
+            recommendLoad = group;
+            RecommendFeed feed = zhihuService.newRecommendFeed();
+            recommendFeed = feed;
+            loadingMoreRecommend = false;
+            duplicatePagesInARow = 0;
+
             ApplicationManager.getApplication().executeOnPooledThread(() -> {
                 try {
                     // ZhihuService service = project.getService(ZhihuService.class); // 已持有引用，直接使用
-                    List<Question> questions = zhihuService.zhihuRecommend();
+                    List<Question> questions = feed.loadMore(group);
 
                     SwingUtilities.invokeLater(() -> {
+                        if (group.isCancelled()) return; // 已经发起了新的刷新
                         listModel.clear();
                         if (questions.isEmpty()) {
                             String noRecommendHtml = "<html><body><p>没有加载到推荐内容，请检查Cookie是否有效。</p></body></html>";
                             String noRecommendPlainText = "没有加载到推荐内容，请检查Cookie是否有效。";
-                            htmlTextPane.setText(noRecommendHtml);
-                            plainTextPane.setText(noRecommendPlainText);
+                            setPaneTexts(noRecommendHtml, noRecommendPlainText);
                         } else {
-                            for (Question q : questions) listModel.addElement(q);
+                            listModel.addAll(questions); // 一次性追加，只触发一次列表事件
+                            if (ZhihuReaderSettings.getInstance().prefetchRecommended) {
+                                zhihuService.prefetcher().prefetchQuestions(questions, PREFETCH_QUESTION_COUNT);
+                            }
 
                             String loadedHtml = "<html><body><p>加载完成，左侧选择一个条目。</p></body></html>";
                             String loadedPlainText = "加载完成，左侧选择一个条目。";
-                            htmlTextPane.setText(loadedHtml);
-                            plainTextPane.setText(loadedPlainText);
+                            setPaneTexts(loadedHtml, loadedPlainText);
                         }
 
                         // 确保显示当前模式的面板
-                        cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+                        showContentCard();
 
                         // 加载完成后更新按钮状态，例如，如果推荐列表为空，下一页按钮应禁用
                         updateFunctionalityButtonsState();
                     });
+                } catch (CancellationException ex) {
+                    // 加载被新的请求取消，结果直接丢弃
                 } catch (IllegalStateException ex) { // 捕获Service抛出的Cookie未设置异常
                     SwingUtilities.invokeLater(() -> {
+                        if (group.isCancelled()) return;
                         showCookieRequiredMessage();
                         updateFunctionalityButtonsState();
                     });
                 } catch (Exception ex) {
                     SwingUtilities.invokeLater(() -> {
+                        if (group.isCancelled()) return;
                         String errorHtml = "<html><body><b>加载失败：</b><br/>" + ex.getMessage() + "<br/>请检查Cookie是否有效或网络连接。</body></html>";
                         String errorPlainText = "加载失败：\n" + ex.getMessage() + "\n请检查Cookie是否有效或网络连接。";
-                        htmlTextPane.setText(errorHtml);
-                        plainTextPane.setText(errorPlainText);
+                        setPaneTexts(errorHtml, errorPlainText);
 
-                        cardLayout.show(contentPanel, isHtmlMode ? HTML_MODE_CARD : PLAIN_TEXT_MODE_CARD);
+                        showContentCard();
                         updateFunctionalityButtonsState();
                     });
                 }
             });
         }
+    
+        // 加载推荐流的下一页并追加到列表末尾，已经出现过的问题会被去重
+        void loadMoreRecommend() {
+            RecommendFeed feed = recommendFeed;
+            if (feed == null || loadingMoreRecommend || listModel.isEmpty() || !feed.hasMore()
+                    || !zhihuService.isCookieSetAndValid()) {
+                return;
+            }
+            loadingMoreRecommend = true;
+            RequestGroup group = recommendLoad;
+
+            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                try {
+                    List<Question> questions = feed.loadMore(group);
+                    SwingUtilities.invokeLater(() -> {
+                        if (group.isCancelled() || feed != recommendFeed) return; // 已经刷新过推荐
+                        listModel.addAll(questions);
+                        loadingMoreRecommend = false;
+                        // 整页都是重复的问题时列表不会变长，也就不会再触发滚动，这里直接继续加载
+                        duplicatePagesInARow = questions.isEmpty() ? duplicatePagesInARow + 1 : 0;
+                        if (questions.isEmpty() && duplicatePagesInARow < MAX_DUPLICATE_PAGES) {
+                            loadMoreRecommend();
+                        }
+                    });
+                } catch (CancellationException ex) {
+                    // 推荐被刷新，旧的翻页请求被取消
+                } catch (Exception ex) {
+                    // 加载更多失败不影响已显示的内容，下次滚动到底部时重试
+                    SwingUtilities.invokeLater(() -> {
+                        if (feed == recommendFeed) loadingMoreRecommend = false;
+                    });
+                }
+            });
+        }
     }
-}
\ No newline at end of file
+}
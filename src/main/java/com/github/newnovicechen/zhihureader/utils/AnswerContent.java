@@ -0,0 +1,193 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import com.github.newnovicechen.zhihureader.exception.ContentException;
+import com.github.newnovicechen.zhihureader.model.Answer;
+import org.jetbrains.annotations.Nullable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.*;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个回答正文的处理结果：给 Swing 显示的 HTML 和纯文本。
+ * <p>
+ * 正文只用 Jsoup 解析一次，然后在一次树遍历中同时完成图片地址改写、段落/列表换行、去掉 Swing
+ * 不能显示的标签，并同时生成两种输出。第一次取任意一种输出时进行处理，结果缓存下来，解析出的
+ * 文档随即丢弃。处理比较耗时，应该在后台线程上调用 {@link #process()}。
+ */
+public final class AnswerContent {
+    // 整个子树都不输出的标签。noscript 里是懒加载图片的备份，其余的 Swing 无法显示
+    private static final Set<String> REMOVED_TAGS = Set.of(
+            "script", "style", "noscript", "iframe", "video", "audio", "svg", "canvas", "button", "input", "form", "link", "meta");
+    // Swing 只支持 HTML 3.2，不认识的 HTML5 块级标签会显示成标签本身，换成它能识别的标签
+    private static final Map<String, String> RENAMED_TAGS = Map.of(
+            "figure", "div", "figcaption", "p", "section", "div", "article", "div", "header", "div", "footer", "div",
+            "mark", "span", "del", "strike");
+
+    private @Nullable String html; // 处理完成后释放
+    private @Nullable Answer answer; // 处理时才从回答解码正文，处理完成后释放
+    private final int imageMaxWidth;
+
+    private volatile @Nullable String swingHtml;
+    private volatile @Nullable String plainText;
+
+    /**
+     * @param html          回答的原始 HTML
+     * @param imageMaxWidth 图片的最大显示宽度（像素）
+     */
+    public AnswerContent(@Nullable String html, int imageMaxWidth) {
+        this.html = html == null ? "" : html;
+        this.imageMaxWidth = imageMaxWidth;
+    }
+
+    /**
+     * 处理时才解码回答的正文，在真正显示之前不在内存中保留解码后的 HTML。
+     */
+    public static AnswerContent of(Answer answer, int imageMaxWidth) {
+        AnswerContent content = new AnswerContent(null, imageMaxWidth);
+        content.html = null;
+        content.answer = answer;
+        return content;
+    }
+
+    /**
+     * 处理后的 HTML 片段（不含 html/body），图片带上了真实地址和最大宽度。
+     */
+    public String swingHtml() {
+        process();
+        return swingHtml;
+    }
+
+    /**
+     * 纯文本，保留段落和列表的换行。
+     */
+    public String plainText() {
+        process();
+        return plainText;
+    }
+
+    /**
+     * 解析并生成两种输出，已经处理过时直接返回。
+     */
+    public AnswerContent process() {
+        if (swingHtml == null) {
+            synchronized (this) {
+                if (swingHtml == null) {
+                    if (html == null) {
+                        html = decode(answer);
+                    }
+                    Walker walker = new Walker(imageMaxWidth);
+                    if (!html.isEmpty()) {
+                        for (Node child : Jsoup.parseBodyFragment(html).body().childNodes()) {
+                            NodeTraversor.filter(walker, child);
+                        }
+                    }
+                    plainText = walker.plain.toString().replace("\u00A0", " ").trim(); // &nbsp;
+                    swingHtml = walker.html.toString();
+                    html = null;
+                    answer = null;
+                }
+            }
+        }
+        return this;
+    }
+
+    // 正文损坏时只影响这一个回答，显示内容错误而不是让整页加载失败
+    private static String decode(Answer answer) {
+        try {
+            String content = answer.getAnswerContent();
+            return content == null ? "" : content;
+        } catch (ContentException e) {
+            return "<p>" + Entities.escape(e.getMessage()) + "，无法显示</p>";
+        }
+    }
+
+    private static final class Walker implements NodeFilter {
+        private final int imageMaxWidth;
+        private final StringBuilder html = new StringBuilder();
+        private final StringBuilder plain = new StringBuilder();
+
+        Walker(int imageMaxWidth) {
+            this.imageMaxWidth = imageMaxWidth;
+        }
+
+        @Override
+        public FilterResult head(Node node, int depth) {
+            if (node instanceof TextNode text) {
+                String s = text.getWholeText();
+                plain.append(s);
+                html.append(Entities.escape(s));
+                return FilterResult.CONTINUE;
+            }
+            if (!(node instanceof Element el)) {
+                return FilterResult.SKIP_ENTIRELY; // 注释、脚本数据等
+            }
+            String tag = el.normalName();
+            if (REMOVED_TAGS.contains(tag)) {
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            switch (tag) {
+                case "br" -> plain.append("\n\n");
+                case "li" -> plain.append("• ");
+                default -> {
+                }
+            }
+            html.append('<').append(RENAMED_TAGS.getOrDefault(tag, tag));
+            if ("img".equals(tag)) {
+                appendImageAttributes(el);
+            } else {
+                for (Attribute attr : el.attributes()) {
+                    html.append(' ').append(attr.html());
+                }
+            }
+            html.append('>');
+            return FilterResult.CONTINUE;
+        }
+
+        @Override
+        public FilterResult tail(Node node, int depth) {
+            if (node instanceof Element el) {
+                String tag = el.normalName();
+                if (!el.tag().isEmpty()) {
+                    html.append("</").append(RENAMED_TAGS.getOrDefault(tag, tag)).append('>');
+                }
+                if ("p".equals(tag) || "li".equals(tag)) {
+                    plain.append('\n');
+                }
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        // 懒加载图片的 src 只是内联占位图，真实地址在 data-actualsrc（显示尺寸）或 data-original（原图）里；
+        // 去掉 style 中的尺寸，写入最大显示宽度，由图片视图按这个宽度缩小图片
+        private void appendImageAttributes(Element img) {
+            String src = img.hasAttr("data-actualsrc") ? img.attr("data-actualsrc")
+                    : img.hasAttr("data-original") ? img.attr("data-original")
+                    : img.attr("src");
+            appendAttribute("src", src);
+            for (Attribute attr : img.attributes()) {
+                switch (attr.getKey()) {
+                    case "src", "width", "height" -> {
+                    }
+                    case "style" -> {
+                        String style = attr.getValue()
+                                .replaceAll("width:[^;]+;?", "")
+                                .replaceAll("height:[^;]+;?", "")
+                                .replaceAll("max-width:[^;]+;?", "");
+                        appendAttribute("style", style);
+                    }
+                    default -> html.append(' ').append(attr.html());
+                }
+            }
+            appendAttribute("width", String.valueOf(imageMaxWidth));
+            appendAttribute("height", "auto");
+        }
+
+        private void appendAttribute(String key, String value) {
+            html.append(' ').append(new Attribute(key, value).html());
+        }
+    }
+}
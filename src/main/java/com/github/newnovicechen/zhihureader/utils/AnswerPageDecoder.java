@@ -0,0 +1,103 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 回答列表 /questions/{id}/answers 的解码器，只读取每个回答的 url、content 和 author.name。
+ * 单个回答详情接口的顶层就是一个回答对象，用 {@link #DETAIL} 解码。
+ */
+public final class AnswerPageDecoder extends ZhihuJsonDecoder<List<AnswerPageDecoder.Item>, List<AnswerPageDecoder.Item>> {
+    public static final AnswerPageDecoder INSTANCE = new AnswerPageDecoder();
+    public static final ZhihuJsonDecoder<Item, Item> DETAIL = new ZhihuJsonDecoder<>() {
+        @Override
+        protected Item newBuilder() {
+            return new Item();
+        }
+
+        @Override
+        protected boolean readField(String name, JsonReader in, Item item) throws IOException {
+            return readItemField(name, in, item);
+        }
+
+        @Override
+        protected Item build(Item item) {
+            return item;
+        }
+    };
+
+    private AnswerPageDecoder() {
+    }
+
+    @Override
+    protected List<Item> newBuilder() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    protected boolean readField(String name, JsonReader in, List<Item> items) throws IOException {
+        if (!"data".equals(name) || in.peek() != JsonToken.BEGIN_ARRAY) {
+            return false;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            Item item = new Item();
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (!readItemField(field, in, item)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            items.add(item);
+        }
+        in.endArray();
+        return true;
+    }
+
+    @Override
+    protected List<Item> build(List<Item> items) {
+        return items;
+    }
+
+    private static boolean readItemField(String name, JsonReader in, Item item) throws IOException {
+        switch (name) {
+            case "url" -> item.url = nextStringOrNull(in);
+            case "content" -> item.content = nextStringOrNull(in);
+            case "author" -> item.authorName = readNestedString(in, "name");
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 解码出的单个回答，content 为 null 表示列表接口没有返回正文
+    public static final class Item {
+        private @Nullable String url;
+        private @Nullable String authorName;
+        private @Nullable String content;
+
+        public @Nullable String getUrl() {
+            return url;
+        }
+
+        public String getAuthorName() {
+            return authorName == null ? "" : authorName;
+        }
+
+        public @Nullable String getContent() {
+            return content;
+        }
+    }
+}
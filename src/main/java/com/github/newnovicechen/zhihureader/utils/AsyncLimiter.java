@@ -0,0 +1,79 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 限制同时进行的异步任务数：前 limit 个任务立即开始，其余的排队，每完成一个再开始下一个。
+ * 和有界线程池不同，排队和等待都不占用线程。
+ * <p>
+ * 返回的 future 在任务开始前被取消时任务不再开始；开始之后被取消或超时时，任务返回的 future 也会被取消。
+ */
+public final class AsyncLimiter {
+    private final int limit;
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+
+    public AsyncLimiter(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("并发数必须大于0");
+        }
+        this.limit = limit;
+    }
+
+    public <T> CompletableFuture<T> submit(@NotNull Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            if (result.isDone()) {
+                release();
+                return;
+            }
+            CompletableFuture<T> inner;
+            try {
+                inner = task.get();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                release();
+                return;
+            }
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    inner.cancel(true);
+                }
+            });
+            inner.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+                release();
+            });
+        };
+        synchronized (this) {
+            if (running >= limit) {
+                waiting.add(start);
+                return result;
+            }
+            running++;
+        }
+        start.run();
+        return result;
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        next.run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import com.github.newnovicechen.zhihureader.exception.HttpException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 异步接口和阻塞接口之间的转换。阻塞方法都是在对应的异步方法上调用 {@link #await}，
+ * 异常和阻塞版本原来的行为一致：{@link HttpException}、{@link java.util.concurrent.CancellationException}
+ * 等运行时异常原样抛出，不会包一层 {@link ExecutionException}。
+ */
+public final class Futures {
+    private Futures() {
+    }
+
+    /**
+     * 等待 future 完成并返回结果。等待的线程被中断时取消 future，进行中的请求随之取消。
+     */
+    public static <T> T await(@NotNull CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new HttpException("加载被中断");
+        }
+    }
+
+    /**
+     * 在 executor 上调用 start 开始一个异步操作，调用方的线程只负责提交，start 里的磁盘读取等同步部分不会在调用方执行。
+     * 与 {@code supplyAsync(start, executor).thenCompose(identity())} 不同，取消返回的 future 会传到 start 返回的 future 上。
+     */
+    public static <T> CompletableFuture<T> startAsync(@NotNull Supplier<CompletableFuture<T>> start, @NotNull Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (result.isDone()) {
+                    return; // 排队期间已经被取消
+                }
+                CompletableFuture<T> started;
+                try {
+                    started = start.get();
+                } catch (RuntimeException e) {
+                    started = CompletableFuture.failedFuture(e);
+                }
+                CompletableFuture<T> operation = started;
+                result.whenComplete((value, error) -> {
+                    if (error != null) {
+                        operation.cancel(false);
+                    }
+                });
+                operation.whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(unwrap(error));
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * 去掉 {@link CompletionException} 和 {@link ExecutionException} 的包装，得到真正的失败原因。
+     */
+    public static @NotNull Throwable unwrap(@NotNull Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * 把失败原因转换成可以直接抛出的运行时异常，在 future 的回调中重新抛出失败时使用。
+     */
+    public static @NotNull RuntimeException propagate(@NotNull Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error e) {
+            throw e;
+        }
+        return new HttpException(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件级共享的 OkHttp 引擎。
+ * <p>
+ * 所有请求共用同一个 {@link ConnectionPool} 和 {@link Dispatcher}，这样对 zhihu.com 的连接
+ * （包括 TLS 握手、HTTP/2 多路复用）可以在多次请求之间复用。带代理的客户端通过
+ * {@link OkHttpClient#newBuilder()} 从共享客户端派生，依然共用连接池和线程池。
+ * 知乎接口请求使用 {@link #apiClient()}，它在共享客户端上加了 {@link ResilienceInterceptor}，负责限流、重试和熔断，
+ * 需要排队或重试的请求通过 {@link #resilience()} 的 {@link ResilienceInterceptor#enqueue} 发出，等待时不占用调度器；
+ * 图片等静态资源直接使用 {@link #client()}，不受接口限流影响。
+ * 插件卸载时需要调用 {@link #shutdown()} 释放线程和空闲连接。
+ */
+public final class HttpEngine {
+    // 连接池参数，可以通过 -Dzhihu.http.maxIdleConnections / -Dzhihu.http.keepAliveSeconds 调整
+    private static int maxIdleConnections = Integer.getInteger("zhihu.http.maxIdleConnections", 8);
+    private static long keepAliveSeconds = Long.getLong("zhihu.http.keepAliveSeconds", 300L);
+    private static int maxRequestsPerHost = Integer.getInteger("zhihu.http.maxRequestsPerHost", 10);
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private static ResilienceInterceptor.Config resilience = ResilienceInterceptor.Config.fromSystemProperties();
+
+    private static volatile OkHttpClient client;
+    private static volatile OkHttpClient apiClient;
+    private static volatile ResilienceInterceptor resilienceInterceptor;
+    private static final Map<Proxy, OkHttpClient> proxyClients = new ConcurrentHashMap<>();
+
+    private HttpEngine() {
+    }
+
+    /**
+     * 获取共享客户端，首次调用时创建。
+     */
+    public static OkHttpClient client() {
+        OkHttpClient c = client;
+        if (c == null) {
+            synchronized (HttpEngine.class) {
+                c = client;
+                if (c == null) {
+                    c = createClient();
+                    client = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 获取请求知乎接口用的客户端，与共享客户端共用连接池和调度器，另外带有限流、重试和熔断。
+     */
+    public static OkHttpClient apiClient() {
+        OkHttpClient c = apiClient;
+        if (c == null) {
+            synchronized (HttpEngine.class) {
+                c = apiClient;
+                if (c == null) {
+                    ResilienceInterceptor interceptor = new ResilienceInterceptor(resilience);
+                    c = client().newBuilder().addInterceptor(interceptor).build();
+                    resilienceInterceptor = interceptor;
+                    apiClient = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 获取接口客户端上的限流、重试和熔断拦截器，所有接口客户端共用一个。
+     */
+    public static ResilienceInterceptor resilience() {
+        apiClient();
+        return resilienceInterceptor;
+    }
+
+    /**
+     * 获取使用指定代理的接口客户端，与共享客户端共用连接池、调度器和限流状态。
+     */
+    public static OkHttpClient client(Proxy proxy) {
+        if (proxy == null) {
+            return apiClient();
+        }
+        OkHttpClient base = apiClient();
+        return proxyClients.computeIfAbsent(proxy, p -> base.newBuilder().proxy(p).build());
+    }
+
+    /**
+     * 调整连接池参数。已有的客户端会被关闭，下一次请求时按新参数重建。
+     */
+    public static synchronized void configure(int maxIdle, long keepAlive, TimeUnit unit, int maxPerHost) {
+        if (maxIdle < 0 || keepAlive <= 0 || maxPerHost < 1) {
+            throw new IllegalArgumentException("非法的连接池参数");
+        }
+        shutdown();
+        maxIdleConnections = maxIdle;
+        keepAliveSeconds = unit.toSeconds(keepAlive);
+        maxRequestsPerHost = maxPerHost;
+    }
+
+    /**
+     * 调整限流、重试和熔断参数。已有的客户端会被关闭，限流和熔断状态随之清空。
+     */
+    public static synchronized void configureResilience(ResilienceInterceptor.Config config) {
+        shutdown();
+        resilience = config;
+    }
+
+    /**
+     * 关闭共享客户端：停止调度线程并清空连接池。之后再次调用 {@link #client()} 会重新创建。
+     */
+    public static synchronized void shutdown() {
+        OkHttpClient c = client;
+        client = null;
+        apiClient = null;
+        ResilienceInterceptor interceptor = resilienceInterceptor;
+        resilienceInterceptor = null;
+        proxyClients.clear();
+        if (interceptor != null) {
+            interceptor.shutdown();
+        }
+        if (c != null) {
+            c.dispatcher().cancelAll();
+            c.dispatcher().executorService().shutdown();
+            c.connectionPool().evictAll();
+        }
+    }
+
+    private static OkHttpClient createClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                // 记录 DNS、连接、TLS、首字节等各阶段的耗时
+                .eventListenerFactory(HttpMetrics.shared().eventListenerFactory())
+                // 优先 HTTP/2，同一个连接上多路复用并发请求
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,289 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import com.intellij.openapi.diagnostic.Logger;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP 层和页面加载的耗时统计。
+ * <p>
+ * 网络各阶段（DNS、建立连接、TLS、首字节、下载响应体）由 {@link #eventListenerFactory()} 创建的 OkHttp
+ * {@link EventListener} 记录；JSON 解码、整页加载和回答渲染由 {@link SendHttpUtil}、ZhihuService 和界面调用
+ * {@link #record} 记录。每个阶段一个 {@link LatencyHistogram}，另外统计连接复用和最近几个请求的分阶段耗时。
+ * <p>
+ * 流式解码一边下载一边解析，所以“下载响应体”和“解析 JSON”两个阶段是重叠的。
+ */
+public final class HttpMetrics {
+    private static final Logger LOG = Logger.getInstance(HttpMetrics.class);
+    private static final HttpMetrics SHARED = new HttpMetrics();
+    // 诊断信息中保留的最近请求数
+    private static final int RECENT_CALLS = 20;
+
+    public enum Phase {
+        DNS("DNS"),
+        CONNECT("建立连接"),
+        TLS("TLS 握手"),
+        TTFB("首字节"),
+        BODY("下载响应体"),
+        CALL("整个请求"),
+        PARSE("解析 JSON"),
+        PAGE("整页回答"),
+        FIRST_ANSWER("首个回答显示"),
+        RENDER("处理回答正文");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final Deque<String> recentCalls = new ArrayDeque<>(); // 由自身保护
+
+    public HttpMetrics() {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public static HttpMetrics shared() {
+        return SHARED;
+    }
+
+    public void record(@NotNull Phase phase, long nanos) {
+        histograms.get(phase).record(nanos);
+    }
+
+    public LatencyHistogram histogram(@NotNull Phase phase) {
+        return histograms.get(phase);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getConnectionsAcquired() {
+        return connectionsAcquired.sum();
+    }
+
+    /**
+     * 新建的连接数，其余的连接获取都复用了连接池中的连接。
+     */
+    public long getConnectionsCreated() {
+        return connectionsCreated.sum();
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+        calls.reset();
+        failedCalls.reset();
+        connectionsAcquired.reset();
+        connectionsCreated.reset();
+        responseBytes.reset();
+        synchronized (recentCalls) {
+            recentCalls.clear();
+        }
+    }
+
+    public EventListener.Factory eventListenerFactory() {
+        return call -> new CallListener();
+    }
+
+    /**
+     * 生成诊断报告：各阶段的 p50/p95/p99，连接复用情况和最近的请求。
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-12s %7s %9s %9s %9s %9s%n", "阶段（毫秒）", "次数", "p50", "p95", "p99", "最大"));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram h = histograms.get(phase);
+            if (h.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format("%-12s %7d %9.1f %9.1f %9.1f %9.1f%n", phase.label, h.getCount(),
+                    h.percentileMillis(50), h.percentileMillis(95), h.percentileMillis(99), h.getMaxMillis()));
+        }
+        long acquired = connectionsAcquired.sum();
+        long created = connectionsCreated.sum();
+        sb.append(String.format("%n请求 %d 个，失败 %d 个，接收 %.1f KB%n", calls.sum(), failedCalls.sum(), responseBytes.sum() / 1024.0));
+        sb.append(String.format("获取连接 %d 次，新建 %d 个，复用率 %.0f%%%n", acquired, created,
+                acquired == 0 ? 0.0 : 100.0 * (acquired - Math.min(created, acquired)) / acquired));
+        List<String> recent;
+        synchronized (recentCalls) {
+            recent = new ArrayList<>(recentCalls);
+        }
+        if (!recent.isEmpty()) {
+            sb.append("\n最近的请求：\n");
+            recent.forEach(line -> sb.append(line).append('\n'));
+        }
+        return sb.toString();
+    }
+
+    private void addRecent(String line) {
+        synchronized (recentCalls) {
+            if (recentCalls.size() == RECENT_CALLS) {
+                recentCalls.removeFirst();
+            }
+            recentCalls.addLast(line);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(line);
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * 一个请求的事件记录。同一个请求的事件依次发生，线程之间经过 OkHttp 调度线程池的交接，不需要额外同步；
+     * 重试时同一阶段会出现多次，分别计入直方图。
+     */
+    private final class CallListener extends EventListener {
+        private final long callStart = System.nanoTime();
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestSent;
+        private long bodyStart;
+        // 本次请求中各阶段的累计耗时，用于最近请求列表
+        private long dns;
+        private long connect;
+        private long tls;
+        private long ttfb;
+        private long body;
+        private boolean reused = true;
+
+        @Override
+        public void callStart(@NotNull Call call) {
+            calls.increment();
+        }
+
+        @Override
+        public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(@NotNull Call call, @NotNull String domainName, @NotNull List<InetAddress> inetAddressList) {
+            long elapsed = System.nanoTime() - dnsStart;
+            dns += elapsed;
+            record(Phase.DNS, elapsed);
+        }
+
+        @Override
+        public void connectStart(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress, @NotNull Proxy proxy) {
+            connectStart = System.nanoTime();
+            reused = false;
+            connectionsCreated.increment();
+        }
+
+        @Override
+        public void secureConnectStart(@NotNull Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+            long elapsed = System.nanoTime() - secureConnectStart;
+            tls += elapsed;
+            record(Phase.TLS, elapsed);
+        }
+
+        @Override
+        public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress, @NotNull Proxy proxy,
+                               @Nullable Protocol protocol) {
+            long elapsed = System.nanoTime() - connectStart;
+            connect += elapsed;
+            record(Phase.CONNECT, elapsed);
+        }
+
+        @Override
+        public void connectFailed(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress, @NotNull Proxy proxy,
+                                  @Nullable Protocol protocol, @NotNull IOException ioe) {
+            connect += System.nanoTime() - connectStart;
+        }
+
+        @Override
+        public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+            connectionsAcquired.increment();
+        }
+
+        @Override
+        public void requestHeadersEnd(@NotNull Call call, @NotNull Request request) {
+            requestSent = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(@NotNull Call call, long byteCount) {
+            requestSent = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(@NotNull Call call) {
+            long elapsed = System.nanoTime() - requestSent;
+            ttfb += elapsed;
+            record(Phase.TTFB, elapsed);
+        }
+
+        @Override
+        public void responseHeadersEnd(@NotNull Call call, @NotNull Response response) {
+            bodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(@NotNull Call call, long byteCount) {
+            long elapsed = System.nanoTime() - bodyStart;
+            body += elapsed;
+            responseBytes.add(byteCount);
+            record(Phase.BODY, elapsed);
+        }
+
+        @Override
+        public void callEnd(@NotNull Call call) {
+            finish(call, null);
+        }
+
+        @Override
+        public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+            failedCalls.increment();
+            finish(call, ioe);
+        }
+
+        private void finish(Call call, @Nullable IOException error) {
+            long total = System.nanoTime() - callStart;
+            record(Phase.CALL, total);
+            addRecent(String.format("%s %s%s：共 %d ms（DNS %d，连接 %d%s，TLS %d，首字节 %d，下载 %d）%s",
+                    call.request().method(), call.request().url().encodedPath(),
+                    call.request().url().encodedQuery() == null ? "" : "?…",
+                    millis(total), millis(dns), millis(connect), reused ? "，复用" : "", millis(tls), millis(ttfb), millis(body),
+                    error == null ? "" : " 失败：" + error.getMessage()));
+        }
+    }
+}
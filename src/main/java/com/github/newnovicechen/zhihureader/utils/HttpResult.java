@@ -0,0 +1,40 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 带缓存校验信息的请求结果。响应码为 304 时没有 body，调用方应继续使用本地缓存。
+ */
+public final class HttpResult<T> {
+    private final int code;
+    private final @Nullable T body;
+    private final @Nullable String etag;
+    private final @Nullable String lastModified;
+
+    HttpResult(int code, @Nullable T body, @Nullable String etag, @Nullable String lastModified) {
+        this.code = code;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public boolean isNotModified() {
+        return code == 304;
+    }
+
+    public @Nullable T getBody() {
+        return body;
+    }
+
+    public @Nullable String getEtag() {
+        return etag;
+    }
+
+    public @Nullable String getLastModified() {
+        return lastModified;
+    }
+}
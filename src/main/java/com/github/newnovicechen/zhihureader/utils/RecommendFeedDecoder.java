@@ -0,0 +1,124 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import com.github.newnovicechen.zhihureader.model.FeedPage;
+import com.github.newnovicechen.zhihureader.model.Question;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 推荐流 /feed/topstory/recommend 的解码器，只读取 data[*].target.question 的 id 和 title，
+ * 以及用于翻页的 paging.next / paging.is_end。没有 question 的条目（广告、文章等）直接跳过。
+ */
+public final class RecommendFeedDecoder extends ZhihuJsonDecoder<FeedPage, RecommendFeedDecoder.Builder> {
+    public static final RecommendFeedDecoder INSTANCE = new RecommendFeedDecoder();
+
+    private RecommendFeedDecoder() {
+    }
+
+    @Override
+    protected Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    protected boolean readField(String name, JsonReader in, Builder builder) throws IOException {
+        if ("paging".equals(name) && in.peek() == JsonToken.BEGIN_OBJECT) {
+            readPaging(in, builder);
+            return true;
+        }
+        if (!"data".equals(name) || in.peek() != JsonToken.BEGIN_ARRAY) {
+            return false;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            Question question = readItem(in);
+            if (question != null) {
+                builder.questions.add(question);
+            }
+        }
+        in.endArray();
+        return true;
+    }
+
+    @Override
+    protected FeedPage build(Builder builder) {
+        // 没有下一页地址时也视为结束
+        return new FeedPage(builder.questions, builder.nextUrl, builder.isEnd || builder.nextUrl == null);
+    }
+
+    private static void readPaging(JsonReader in, Builder builder) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "next" -> builder.nextUrl = nextStringOrNull(in);
+                case "is_end" -> {
+                    if (in.peek() == JsonToken.BOOLEAN) {
+                        builder.isEnd = in.nextBoolean();
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static @Nullable Question readItem(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        Question question = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("target".equals(in.nextName()) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                question = readTarget(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return question;
+    }
+
+    private static @Nullable Question readTarget(JsonReader in) throws IOException {
+        Question question = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("question".equals(in.nextName()) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                question = readQuestion(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return question;
+    }
+
+    private static @Nullable Question readQuestion(JsonReader in) throws IOException {
+        String id = null;
+        String title = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = nextStringOrNull(in);
+                case "title" -> title = nextStringOrNull(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return id == null || title == null ? null : new Question(id, title);
+    }
+
+    static final class Builder {
+        private final List<Question> questions = new ArrayList<>();
+        private @Nullable String nextUrl;
+        private boolean isEnd;
+    }
+}
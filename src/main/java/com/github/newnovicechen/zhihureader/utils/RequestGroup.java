@@ -0,0 +1,73 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import okhttp3.Call;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 一组可以整体取消的请求，例如加载某个问题的一页回答时发出的所有请求。
+ * <p>
+ * 调用 {@link #cancel()} 会取消组内所有进行中的 OkHttp {@link Call}，之后再发起的请求直接失败。
+ * UI 在更新界面前检查 {@link #isCancelled()}，丢弃已经过期的结果。
+ */
+public final class RequestGroup {
+    private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> cancelListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+        for (Call call : calls) {
+            call.cancel();
+        }
+        for (Runnable listener : cancelListeners) {
+            // 只有成功移除的一方执行，保证每个回调最多执行一次
+            if (cancelListeners.remove(listener)) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * 取消时执行 listener，已经取消时立即执行。回调在调用 {@link #cancel()} 的线程上执行，应当很快返回。
+     */
+    public void onCancel(Runnable listener) {
+        cancelListeners.add(listener);
+        if (cancelled && cancelListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    public void removeOnCancel(Runnable listener) {
+        cancelListeners.remove(listener);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 已取消时抛出 {@link CancellationException}。
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("请求已取消");
+        }
+    }
+
+    void register(Call call) {
+        calls.add(call);
+        // 注册之后再检查一次，避免和 cancel() 并发时漏掉这个请求
+        if (cancelled) {
+            call.cancel();
+        }
+    }
+
+    void unregister(Call call) {
+        calls.remove(call);
+    }
+}
@@ -0,0 +1,396 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * 知乎接口请求的限流、重试和熔断。
+ * <p>
+ * 每个主机一个令牌桶，请求发出前先取令牌；收到 403/429 时把该主机的速率减半，并按 Retry-After 暂停整个主机，
+ * 之后每个成功的请求逐步恢复速率。幂等的 GET/HEAD 请求在网络错误、限流和 502/503/504 时按带抖动的指数退避重试。
+ * 同一主机连续失败（每次重试都算一次）达到阈值后熔断一段时间，期间请求直接失败，时间到了放行一个试探请求，成功后恢复。
+ * <p>
+ * 作为拦截器，它只处理单次请求：熔断时直接失败，并根据响应调整熔断器和令牌桶，从不阻塞。
+ * 取令牌的等待、退避和 Retry-After 由 {@link #enqueue} 放在 OkHttp 调度器之外：时间由一个调度线程计算，
+ * 到点后才把请求交给调度器。等待中的请求不占用调度器的线程，也不占用每个主机的并发名额，
+ * 一次 429 不会让同一主机上的其他请求（包括图片）排在后面。
+ * 直接 {@link Call#execute()} 或 {@link Call#enqueue} 的请求不排队也不重试。
+ */
+public final class ResilienceInterceptor implements Interceptor {
+    private final Config config;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    // 只负责计时，到点后把请求交给 OkHttp，任务都很短
+    private final ScheduledThreadPoolExecutor scheduler;
+    // 正在等待的请求，关闭时让它们失败，不会永远挂起
+    private final Set<RetryingCall> waiting = ConcurrentHashMap.newKeySet();
+
+    public ResilienceInterceptor(@NotNull Config config) {
+        this.config = config;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "Zhihu HTTP Retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 限流和重试参数，可以通过 -Dzhihu.http.ratePerSecond 等系统属性调整。
+     *
+     * @param ratePerSecond    每个主机每秒最多发出的请求数
+     * @param burst            令牌桶容量，空闲之后最多可以连续发出的请求数
+     * @param maxRetries       幂等请求的最大重试次数
+     * @param baseBackoffMillis 第一次重试前的退避时间，之后每次翻倍
+     * @param maxBackoffMillis 单次退避的上限；Retry-After 超过它时不再重试，直接返回响应
+     * @param failureThreshold 连续失败多少次后熔断
+     * @param openMillis       熔断持续时间
+     */
+    public record Config(double ratePerSecond, int burst, int maxRetries, long baseBackoffMillis,
+                         long maxBackoffMillis, int failureThreshold, long openMillis) {
+        public Config {
+            if (ratePerSecond <= 0 || burst < 1 || maxRetries < 0 || baseBackoffMillis < 0
+                    || maxBackoffMillis < baseBackoffMillis || failureThreshold < 1 || openMillis < 0) {
+                throw new IllegalArgumentException("非法的限流参数");
+            }
+        }
+
+        public static Config fromSystemProperties() {
+            return new Config(
+                    Double.parseDouble(System.getProperty("zhihu.http.ratePerSecond", "10")),
+                    Integer.getInteger("zhihu.http.burst", 20),
+                    Integer.getInteger("zhihu.http.maxRetries", 3),
+                    Long.getLong("zhihu.http.baseBackoffMillis", 500L),
+                    Long.getLong("zhihu.http.maxBackoffMillis", 30_000L),
+                    Integer.getInteger("zhihu.http.failureThreshold", 5),
+                    Long.getLong("zhihu.http.openMillis", 30_000L));
+        }
+    }
+
+    /**
+     * 熔断期间发出的请求直接以这个异常失败，不会到达服务端。
+     */
+    public static final class CircuitOpenException extends IOException {
+        CircuitOpenException(String host, long remainingNanos) {
+            super("知乎接口连续请求失败，" + Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos)) + " 秒后重试（" + host + "）");
+        }
+    }
+
+    @Override
+    public @NotNull Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String host = hostKey(request);
+        HostState state = hosts.computeIfAbsent(host, h -> new HostState(config));
+        long blocked = state.breaker.acquire(System.nanoTime());
+        if (blocked > 0) {
+            throw new CircuitOpenException(host, blocked);
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            if (!chain.call().isCanceled()) {
+                state.breaker.failure(System.nanoTime());
+            }
+            throw e;
+        }
+        int code = response.code();
+        long now = System.nanoTime();
+        if (code == 403 || code == 429) {
+            state.bucket.throttled(now, Math.max(0, retryAfterNanos(response)));
+        }
+        if (code >= 500 || isRetryable(code)) {
+            state.breaker.failure(now);
+        } else {
+            state.breaker.success();
+            state.bucket.succeeded();
+        }
+        return response;
+    }
+
+    /**
+     * 按限流和重试策略异步发出请求，返回最终的响应：成功的、不可重试的或者重试次数用完的。
+     * 等待令牌和退避期间不占用 OkHttp 的线程。请求属于 group 时，group 取消后进行中的请求和还没发出的重试都会取消；
+     * 返回的 future 被取消时也一样。client 必须带有这个拦截器。
+     */
+    public CompletableFuture<Response> enqueue(@NotNull OkHttpClient client, @NotNull Request request, @Nullable RequestGroup group) {
+        RetryingCall call = new RetryingCall(client, request, group);
+        call.schedule(0);
+        return call.future;
+    }
+
+    /**
+     * 停止调度线程，还在等待的请求以取消失败。
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (RetryingCall call : waiting) {
+            call.future.completeExceptionally(new IOException("Canceled"));
+        }
+        waiting.clear();
+    }
+
+    private static String hostKey(Request request) {
+        return request.url().host() + ":" + request.url().port();
+    }
+
+    // 403 是知乎在请求过多时的另一种限流响应
+    private static boolean isRetryable(int code) {
+        return code == 403 || code == 408 || code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    // 指数退避，取上限的一半到全部之间的随机值，避免并发请求同时重试
+    private long backoffNanos(int attempt) {
+        long cap = Math.min(config.maxBackoffMillis(), config.baseBackoffMillis() << Math.min(attempt, 20));
+        long millis = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // Retry-After 可以是秒数或 HTTP 日期，没有或无法解析时返回 -1
+    private static long retryAfterNanos(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date == null ? -1 : TimeUnit.MILLISECONDS.toNanos(Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 一个逻辑请求的多次尝试。每次尝试都是新的 {@link Call}，前一次结束后才安排下一次，字段不会被并发修改。
+     */
+    private final class RetryingCall implements Callback {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        private final OkHttpClient client;
+        private final Request request;
+        private final @Nullable RequestGroup group;
+        private final HostState state;
+        private final boolean idempotent;
+        private int attempt;
+        private volatile @Nullable Call current;
+        private volatile @Nullable ScheduledFuture<?> pending;
+
+        RetryingCall(OkHttpClient client, Request request, @Nullable RequestGroup group) {
+            this.client = client;
+            this.request = request;
+            this.group = group;
+            this.state = hosts.computeIfAbsent(hostKey(request), h -> new HostState(config));
+            this.idempotent = "GET".equals(request.method()) || "HEAD".equals(request.method());
+            future.whenComplete((response, error) -> {
+                if (error == null) {
+                    return;
+                }
+                waiting.remove(this);
+                ScheduledFuture<?> task = pending;
+                if (task != null) {
+                    task.cancel(false);
+                }
+                Call call = current;
+                if (call != null) {
+                    call.cancel();
+                }
+            });
+        }
+
+        // 至少等待 delay，并且要等到令牌桶允许时才发出
+        void schedule(long delay) {
+            long wait = Math.max(delay, state.bucket.reserve(System.nanoTime()));
+            if (wait <= 0) {
+                send();
+                return;
+            }
+            waiting.add(this);
+            try {
+                pending = scheduler.schedule(this::send, wait, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new IOException("Canceled", e));
+            }
+        }
+
+        private void send() {
+            waiting.remove(this);
+            if (future.isDone()) {
+                return;
+            }
+            if (group != null && group.isCancelled()) {
+                future.completeExceptionally(new IOException("Canceled"));
+                return;
+            }
+            Call call = client.newCall(request);
+            current = call;
+            if (group != null) {
+                group.register(call);
+            }
+            if (future.isDone()) {
+                call.cancel(); // 和取消并发时，取消回调可能没有看到这个请求
+            }
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            if (group != null) {
+                group.unregister(call);
+            }
+            // 熔断的请求直接失败，取消的请求不重试
+            if (call.isCanceled() || e instanceof CircuitOpenException || !retry(backoffNanos(attempt))) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response) {
+            if (group != null) {
+                group.unregister(call);
+            }
+            if (isRetryable(response.code()) && canRetry()) {
+                long retryAfter = retryAfterNanos(response);
+                // Retry-After 太长时不再等待，直接返回这个响应
+                if (retryAfter <= TimeUnit.MILLISECONDS.toNanos(config.maxBackoffMillis())) {
+                    // 重试前必须关闭上一个响应，连接才能被复用
+                    response.close();
+                    retry(retryAfter >= 0 ? retryAfter : backoffNanos(attempt));
+                    return;
+                }
+            }
+            if (!future.complete(response)) {
+                response.close(); // 已经被取消
+            }
+        }
+
+        private boolean canRetry() {
+            return idempotent && attempt < config.maxRetries() && !future.isDone();
+        }
+
+        private boolean retry(long delay) {
+            if (!canRetry()) {
+                return false;
+            }
+            attempt++;
+            schedule(delay);
+            return true;
+        }
+    }
+
+    private static final class HostState {
+        final TokenBucket bucket;
+        final CircuitBreaker breaker;
+
+        HostState(Config config) {
+            bucket = new TokenBucket(config.ratePerSecond(), config.burst());
+            breaker = new CircuitBreaker(config.failureThreshold(), TimeUnit.MILLISECONDS.toNanos(config.openMillis()));
+        }
+    }
+
+    /**
+     * 令牌桶。取令牌时先扣除再计算需要等待的时间，并发请求按到达顺序排开，不会同时醒来。
+     */
+    static final class TokenBucket {
+        private final double maxRate;
+        private final double minRate;
+        private final int burst;
+        private double rate; // 每纳秒补充的令牌数
+        private double tokens;
+        private long last;
+        private long pausedUntil;
+
+        TokenBucket(double ratePerSecond, int burst) {
+            this.maxRate = ratePerSecond / 1e9;
+            this.minRate = Math.min(maxRate, 1 / 1e9);
+            this.burst = burst;
+            this.rate = maxRate;
+            this.tokens = burst;
+            this.last = System.nanoTime();
+            this.pausedUntil = last;
+        }
+
+        /**
+         * 取一个令牌，返回发出请求前需要等待的纳秒数。
+         */
+        synchronized long reserve(long now) {
+            refill(now);
+            tokens -= 1;
+            long wait = tokens < 0 ? (long) (-tokens / rate) : 0;
+            return Math.max(wait, pausedUntil - now);
+        }
+
+        // 乘性减：速率减半，清空积攒的令牌，并按 Retry-After 暂停
+        synchronized void throttled(long now, long pauseNanos) {
+            refill(now);
+            rate = Math.max(minRate, rate / 2);
+            tokens = Math.min(tokens, 0);
+            pausedUntil = Math.max(pausedUntil, now + pauseNanos);
+        }
+
+        // 加性增：每个成功的请求恢复最大速率的 5%
+        synchronized void succeeded() {
+            rate = Math.min(maxRate, rate + maxRate / 20);
+        }
+
+        synchronized double ratePerSecond() {
+            return rate * 1e9;
+        }
+
+        private void refill(long now) {
+            if (now > last) {
+                tokens = Math.min(burst, tokens + (now - last) * rate);
+                last = now;
+            }
+        }
+    }
+
+    /**
+     * 熔断器。连续失败达到阈值后拒绝请求，熔断时间过后每个周期只放行一个试探请求，试探成功即恢复。
+     * 试探请求被取消也不会让熔断器卡住，下一个周期会再放行一个。
+     */
+    static final class CircuitBreaker {
+        private final int threshold;
+        private final long openNanos;
+        private int failures;
+        private long openUntil;
+
+        CircuitBreaker(int threshold, long openNanos) {
+            this.threshold = threshold;
+            this.openNanos = openNanos;
+        }
+
+        /**
+         * 返回 0 表示放行，否则返回还需要等待的纳秒数。
+         */
+        synchronized long acquire(long now) {
+            if (failures < threshold) {
+                return 0;
+            }
+            if (now - openUntil < 0) {
+                return openUntil - now;
+            }
+            openUntil = now + openNanos;
+            return 0;
+        }
+
+        synchronized void success() {
+            failures = 0;
+        }
+
+        synchronized void failure(long now) {
+            if (++failures >= threshold) {
+                openUntil = now + openNanos;
+            }
+        }
+    }
+}
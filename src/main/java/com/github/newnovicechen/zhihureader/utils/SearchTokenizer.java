@@ -0,0 +1,85 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import java.util.function.LongConsumer;
+
+/**
+ * 全文搜索的分词：中日文字符按单字和相邻两字（bigram）切分，字母和数字按连续的单词切分并转成小写，
+ * 其余字符作为分隔符。不依赖词典，任意两个相邻汉字都能被检索到。
+ * <p>
+ * 词项以 64 位哈希的形式输出，索引中只保存哈希。
+ */
+public final class SearchTokenizer {
+    // 过长的字母数字串（链接、base64 等）只取前面一段
+    private static final int MAX_WORD_LENGTH = 32;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 索引用的分词：每个汉字输出单字和与下一个字组成的 bigram，单词输出整个单词。
+     */
+    public static void tokenize(CharSequence text, LongConsumer sink) {
+        split(text, sink, true);
+    }
+
+    /**
+     * 查询用的分词：连续的汉字只输出 bigram（单独一个字时输出单字），所有词项都匹配的文档才是结果。
+     */
+    public static void tokenizeQuery(CharSequence text, LongConsumer sink) {
+        split(text, sink, false);
+    }
+
+    private static void split(CharSequence text, LongConsumer sink, boolean unigrams) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) i++;
+                int runLength = i - start;
+                for (int j = start; j < i; j++) {
+                    if (unigrams || runLength == 1) {
+                        sink.accept(hash(text.charAt(j)));
+                    }
+                    if (j + 1 < i) {
+                        sink.accept(hash(text.charAt(j), text.charAt(j + 1)));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                long h = FNV_OFFSET;
+                int wordLength = 0;
+                while (i < length) {
+                    char w = text.charAt(i);
+                    if (!Character.isLetterOrDigit(w) || isCjk(w)) break;
+                    if (wordLength++ < MAX_WORD_LENGTH) {
+                        h = (h ^ Character.toLowerCase(w)) * FNV_PRIME;
+                    }
+                    i++;
+                }
+                sink.accept(h);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // 汉字、假名和谚文都没有空格分词，按字切分。直接比较码位范围，比查 UnicodeBlock 快得多
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF)     // CJK 统一汉字
+                || (c >= 0x3400 && c <= 0x4DBF) // 扩展 A
+                || (c >= 0xF900 && c <= 0xFAFF) // 兼容汉字
+                || (c >= 0x3040 && c <= 0x30FF) // 平假名、片假名
+                || (c >= 0xAC00 && c <= 0xD7AF); // 谚文音节
+    }
+
+    private static long hash(char c) {
+        return (FNV_OFFSET ^ c) * FNV_PRIME;
+    }
+
+    private static long hash(char a, char b) {
+        return (((FNV_OFFSET ^ a) * FNV_PRIME) ^ b) * FNV_PRIME;
+    }
+}
@@ -2,34 +2,38 @@ package com.github.newnovicechen.zhihureader.utils;
 
 import com.github.newnovicechen.zhihureader.exception.HttpException;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.net.Proxy;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 //通用http发送
 public class SendHttpUtil {
+    // Gson 线程安全，全局复用一个实例及其缓存的 TypeAdapter
+    private static final Gson GSON = new Gson();
+
+    // 失败响应的响应体最多保留这么多字节
+    private static final long ERROR_BODY_LIMIT = 8 * 1024;
+
+    // 共享引擎中的接口客户端，避免每次请求都重新建立连接，并统一限流和重试
     private static OkHttpClient getClient() {
-        OkHttpClient client = new OkHttpClient()
-                .newBuilder()
-                .readTimeout(60, TimeUnit.SECONDS)
-                .connectTimeout(60, TimeUnit.SECONDS).build();
-        return client;
+        return HttpEngine.apiClient();
     }
 
     private static OkHttpClient getClientWithProxy(Proxy proxy) {
-        OkHttpClient client = new OkHttpClient()
-                .newBuilder()
-                .proxy(proxy)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .connectTimeout(60, TimeUnit.SECONDS).build();
-        return client;
+        return HttpEngine.client(proxy);
     }
 
     private static Request getRequest(HttpUrl url) {
@@ -81,145 +85,248 @@ public class SendHttpUtil {
     }
 
     public static <T> T sendHttpPost(HttpUrl url, String jsonBody, Map<String, String> headerParams, Class<T> clazz) {
-        OkHttpClient client = getClient();
-        Request request = postRequest(url, jsonBody, headerParams);
-        Response response = null;
-        try {
-            response = client.newCall(request).execute();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return checkResponse(response, clazz);
+        return Futures.await(sendHttpPostAsync(url, jsonBody, headerParams, null, clazz));
     }
 
     public static <T> T sendHttpPost(HttpUrl url, String jsonBody, Map<String, String> headerParams, Proxy proxy, Class<T> clazz) {
-        try {
-            OkHttpClient client = getClientWithProxy(proxy);
-            Request request = postRequest(url, jsonBody, headerParams);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, clazz);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpPostAsync(url, jsonBody, headerParams, proxy, clazz));
     }
 
     public static JsonObject sendHttpPost(HttpUrl url, String jsonBody, Map<String, String> headerParams, Proxy proxy) {
-        try {
-            OkHttpClient client = getClientWithProxy(proxy);
-            Request request = postRequest(url, jsonBody, headerParams);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, JsonObject.class);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpPostAsync(url, jsonBody, headerParams, proxy, JsonObject.class));
     }
 
     public static JsonObject sendHttpPost(HttpUrl url, String jsonBody, Map<String, String> headerParams) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = postRequest(url, jsonBody, headerParams);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, JsonObject.class);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpPostAsync(url, jsonBody, headerParams, null, JsonObject.class));
     }
 
     public static <T> T sendHttpPost(HttpUrl url, String jsonBody, Class<T> clazz) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = postRequest(url, jsonBody);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, clazz);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpPostAsync(url, jsonBody, null, null, clazz));
     }
 
     public static JsonObject sendHttpPost(HttpUrl url, String jsonBody) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = postRequest(url, jsonBody);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, JsonObject.class);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpPostAsync(url, jsonBody, null, null, JsonObject.class));
     }
 
     public static byte[] sendHttpPostReturnByte(HttpUrl url, String jsonBody) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = postRequest(url, jsonBody);
-            Response response = client.newCall(request).execute();
-            return response.body().bytes();
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(call(getClient(), postRequest(url, jsonBody), null, response -> {
+            try (response) {
+                return response.body().bytes();
+            }
+        }));
+    }
+
+    /**
+     * 异步 POST，proxy 为 null 时不使用代理。POST 不是幂等请求，失败时不会重试。
+     */
+    public static <T> CompletableFuture<T> sendHttpPostAsync(HttpUrl url, String jsonBody, @Nullable Map<String, String> headerParams,
+                                                             @Nullable Proxy proxy, Class<T> clazz) {
+        OkHttpClient client = proxy == null ? getClient() : getClientWithProxy(proxy);
+        Request request = headerParams == null ? postRequest(url, jsonBody) : postRequest(url, jsonBody, headerParams);
+        return call(client, request, null, response -> checkResponse(response, clazz));
     }
 
     public static JsonObject sendHttpGet(HttpUrl url, Map<String, String> headerParams) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = getRequest(url, headerParams);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, JsonObject.class);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpGetAsync(url, headerParams));
     }
 
     public static <T> T sendHttpGet(HttpUrl url, Map<String, String> headerParams, Class<T> clazz) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = getRequest(url, headerParams);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, clazz);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpGetAsync(url, headerParams, clazz));
+    }
+
+    public static <T> T sendHttpGet(HttpUrl url, Map<String, String> headerParams, ZhihuJsonDecoder<T, ?> decoder) {
+        return sendHttpGet(url, headerParams, decoder, null);
+    }
+
+    /**
+     * 请求归属于 group，group 被取消时请求会被中断。
+     */
+    public static <T> T sendHttpGet(HttpUrl url, Map<String, String> headerParams, ZhihuJsonDecoder<T, ?> decoder, @Nullable RequestGroup group) {
+        return Futures.await(sendHttpGetAsync(url, headerParams, decoder, group));
+    }
+
+    public static CompletableFuture<JsonObject> sendHttpGetAsync(HttpUrl url, @Nullable Map<String, String> headerParams) {
+        return sendHttpGetAsync(url, headerParams, JsonObject.class);
+    }
+
+    public static <T> CompletableFuture<T> sendHttpGetAsync(HttpUrl url, @Nullable Map<String, String> headerParams, Class<T> clazz) {
+        Request request = headerParams == null ? getRequest(url) : getRequest(url, headerParams);
+        return call(getClient(), request, null, response -> checkResponse(response, clazz));
+    }
+
+    /**
+     * 异步 GET，响应体在 OkHttp 的回调线程上流式解码。请求归属于 group，group 被取消时请求会被中断。
+     */
+    public static <T> CompletableFuture<T> sendHttpGetAsync(HttpUrl url, Map<String, String> headerParams, ZhihuJsonDecoder<T, ?> decoder,
+                                                            @Nullable RequestGroup group) {
+        return call(getClient(), getRequest(url, headerParams), group, response -> checkResponse(response, decoder));
+    }
+
+    /**
+     * 条件请求：headerParams 中可带 If-None-Match / If-Modified-Since，服务端返回 304 时结果没有 body。
+     */
+    public static <T> HttpResult<T> sendConditionalGet(HttpUrl url, Map<String, String> headerParams, ZhihuJsonDecoder<T, ?> decoder) {
+        return sendConditionalGet(url, headerParams, decoder, null);
+    }
+
+    public static <T> HttpResult<T> sendConditionalGet(HttpUrl url, Map<String, String> headerParams, ZhihuJsonDecoder<T, ?> decoder, @Nullable RequestGroup group) {
+        return Futures.await(sendConditionalGetAsync(url, headerParams, decoder, group));
+    }
+
+    public static <T> CompletableFuture<HttpResult<T>> sendConditionalGetAsync(HttpUrl url, Map<String, String> headerParams,
+                                                                                ZhihuJsonDecoder<T, ?> decoder, @Nullable RequestGroup group) {
+        return call(getClient(), getRequest(url, headerParams), group, response -> {
+            String etag = response.header("ETag");
+            String lastModified = response.header("Last-Modified");
+            if (response.code() == 304) {
+                response.close();
+                return new HttpResult<>(304, null, etag, lastModified);
+            }
+            int code = response.code();
+            return new HttpResult<>(code, checkResponse(response, decoder), etag, lastModified);
+        });
     }
 
     public static <T> T sendHttpGet(HttpUrl url, Class<T> clazz) {
-        try {
-            OkHttpClient client = getClient();
-            Request request = getRequest(url);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, clazz);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
-        }
+        return Futures.await(sendHttpGetAsync(url, null, clazz));
     }
 
     public static JsonObject sendHttpGet(HttpUrl url) {
+        return Futures.await(sendHttpGetAsync(url, null));
+    }
+
+    /**
+     * 通过 {@link ResilienceInterceptor#enqueue} 异步发出请求，不占用调用方的线程，限流和重试的等待也不占用 OkHttp 的线程。
+     * 最终的响应在 OkHttp 的回调线程上交给 handler 处理，handler 负责关闭响应。
+     * <p>
+     * 取消是双向的：group 被取消或者返回的 future 被取消、超时（例如 {@link CompletableFuture#orTimeout}）时，
+     * 进行中的请求和还没发出的重试都会被中断。
+     */
+    private static <T> CompletableFuture<T> call(OkHttpClient client, Request request, @Nullable RequestGroup group,
+                                                 ResponseHandler<T> handler) {
+        CompletableFuture<Response> call = HttpEngine.resilience().enqueue(client, request, group);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                call.cancel(false);
+            }
+        });
+        call.whenComplete((response, error) -> {
+            if (error != null) {
+                future.completeExceptionally(toHttpException(error));
+                return;
+            }
+            if (future.isDone()) {
+                response.close();
+                return;
+            }
+            try {
+                future.complete(handler.handle(response));
+            } catch (Exception e) {
+                response.close();
+                future.completeExceptionally(toHttpException(e));
+            }
+        });
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    // 已经是 HttpException 的保留状态码和响应体，其余异常包装一层
+    private static HttpException toHttpException(Throwable e) {
+        if (e instanceof HttpException httpException) {
+            return httpException;
+        }
+        return new HttpException(e.getMessage(), e);
+    }
+
+    private static HttpException failedResponse(Response response) {
+        String body = null;
         try {
-            OkHttpClient client = getClient();
-            Request request = getRequest(url);
-            Response response = client.newCall(request).execute();
-            return checkResponse(response, JsonObject.class);
-        } catch (Exception e) {
-            throw new HttpException(e.getMessage());
+            body = response.peekBody(ERROR_BODY_LIMIT).string();
+        } catch (IOException ignored) {
+            // 响应体读不出来时只保留状态码
         }
+        return new HttpException("远程调用失败：HTTP " + response.code(), response.code(), body);
     }
 
     public static <T> T checkResponse(Response response, Class<T> clazz) throws HttpException {
-        if (!response.isSuccessful()) {
-            throw new HttpException("远程调用失败");
-        }
-        String s;
-        try {
-            s = response.body().string();
+        return checkResponse(response, GSON.getAdapter(clazz));
+    }
+
+    /**
+     * 单次解析响应体：adapter 直接从 {@link ResponseBody} 的字符流读取，错误包装在同一遍读取中检查，
+     * 不再先构建整棵 JSON 树再转换。结果本身是 JSON 树（例如 {@link JsonObject}）时在结果上检查。
+     */
+    public static <T> T checkResponse(Response response, TypeAdapter<T> adapter) throws HttpException {
+        long start = System.nanoTime();
+        // 用完必须关闭响应，连接才能回到连接池被复用
+        try (response) {
+            if (!response.isSuccessful()) {
+                throw failedResponse(response);
+            }
+            EnvelopeReader reader = new EnvelopeReader(response.body().charStream());
+            T result = adapter.read(reader);
+            if (result instanceof JsonObject jsonObject && jsonObject.has("code")) {
+                reader.code = jsonObject.get("code").getAsInt();
+                JsonElement errorStackTrace = jsonObject.get("errorStackTrace");
+                reader.errorStackTrace = errorStackTrace == null || errorStackTrace.isJsonNull() ? null : errorStackTrace.getAsString();
+            }
+            if (reader.code != null && reader.code != 200) {
+                throw new HttpException(reader.errorStackTrace);
+            }
+            return result;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            HttpMetrics.shared().record(HttpMetrics.Phase.PARSE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 在 adapter 读取的同一遍里记下顶层的 {@code code} 和 {@code errorStackTrace}。
+     * 目标类型没有这两个字段时，Gson 的反射 adapter 会调用 {@link #skipValue()} 跳过它们，这里改为读取其值。
+     */
+    private static final class EnvelopeReader extends JsonReader {
+        private @Nullable Integer code;
+        private @Nullable String errorStackTrace;
+
+        EnvelopeReader(Reader in) {
+            super(in);
         }
-        JsonObject jsonObject = JsonParser.parseString(s).getAsJsonObject();
-        if (jsonObject.has("code")) {
-            if (jsonObject.get("code").getAsInt() != 200) {
-                throw new HttpException(jsonObject.get("errorStackTrace").getAsString());
+
+        @Override
+        public void skipValue() throws IOException {
+            String path = getPath();
+            JsonToken token = peek();
+            boolean scalar = token == JsonToken.STRING || token == JsonToken.NUMBER;
+            if (scalar && "$.code".equals(path)) {
+                code = Integer.valueOf(nextString());
+            } else if (scalar && "$.errorStackTrace".equals(path)) {
+                errorStackTrace = nextString();
+            } else {
+                super.skipValue();
             }
         }
-        return new Gson().fromJson(s, clazz);
+    }
+
+    /**
+     * 流式解码响应体：解码器直接从字符流读取需要的字段，错误包装由解码器检查，不构建 JSON 树。
+     */
+    public static <T> T checkResponse(Response response, ZhihuJsonDecoder<T, ?> decoder) throws HttpException {
+        long start = System.nanoTime();
+        try (response) {
+            if (!response.isSuccessful()) {
+                throw failedResponse(response);
+            }
+            return decoder.decode(new JsonReader(response.body().charStream()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            HttpMetrics.shared().record(HttpMetrics.Phase.PARSE, System.nanoTime() - start);
+        }
     }
 }
@@ -0,0 +1,118 @@
+package com.github.newnovicechen.zhihureader.utils;
+
+import com.github.newnovicechen.zhihureader.exception.HttpException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * 流式解码器基类（只解码，不参与 Gson 的序列化）：逐个读取顶层字段，只取子类关心的字段，其余字段直接跳过，不构建 JSON 树。
+ * <p>
+ * 顶层的错误包装（{@code code}/{@code errorStackTrace} 以及知乎的 {@code error} 对象）在这里统一检查，
+ * 语义与 {@link SendHttpUtil#checkResponse(okhttp3.Response, Class)} 一致。
+ *
+ * @param <T> 解码结果类型
+ * @param <B> 解码过程中累积字段用的中间对象
+ */
+public abstract class ZhihuJsonDecoder<T, B> {
+
+    protected abstract B newBuilder();
+
+    /**
+     * 读取一个顶层字段。不关心的字段返回 false，由基类跳过。
+     */
+    protected abstract boolean readField(String name, JsonReader in, B builder) throws IOException;
+
+    protected abstract T build(B builder);
+
+    /**
+     * 从 reader 当前位置解码一个顶层对象。
+     */
+    public final T decode(JsonReader in) throws IOException {
+        B builder = newBuilder();
+        Integer code = null;
+        String errorStackTrace = null;
+        String errorMessage = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case "code" -> {
+                    String value = nextStringOrNull(in);
+                    code = value == null ? null : Integer.valueOf(value);
+                }
+                case "errorStackTrace" -> errorStackTrace = nextStringOrNull(in);
+                case "error" -> errorMessage = readErrorMessage(in);
+                default -> {
+                    if (!readField(name, in, builder)) {
+                        in.skipValue();
+                    }
+                }
+            }
+        }
+        in.endObject();
+        if (code != null && code != 200) {
+            throw new HttpException(errorStackTrace);
+        }
+        if (errorMessage != null) {
+            throw new HttpException(errorMessage);
+        }
+        return build(builder);
+    }
+
+    // 知乎接口的错误格式：{"error": {"code": 10003, "message": "..."}}
+    private static @Nullable String readErrorMessage(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            return nextStringOrNull(in);
+        }
+        String message = "远程调用失败";
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("message".equals(in.nextName())) {
+                String value = nextStringOrNull(in);
+                if (value != null) {
+                    message = value;
+                }
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return message;
+    }
+
+    /**
+     * 读取字符串或数字字段，null 返回 null，其他类型跳过并返回 null。
+     */
+    protected static @Nullable String nextStringOrNull(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return in.nextString();
+        }
+        in.skipValue();
+        return null;
+    }
+
+    /**
+     * 在对象中查找指定的字符串字段，例如 author.name，其余字段跳过。
+     */
+    protected static @Nullable String readNestedString(JsonReader in, String field) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        String value = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (field.equals(in.nextName())) {
+                value = nextStringOrNull(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return value;
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.newnovicechen.zhihureader.model
+
+import com.github.newnovicechen.zhihureader.exception.ContentException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class AnswerTest {
+    @Test
+    fun contentSurvivesCompactStorage() {
+        val long = (0 until 500).joinToString("") { "<p data-pid=\"p$it\">第${it}段，含 emoji 😀 和&nbsp;实体。</p>" }
+        for (content in listOf(long, "<p>短回答</p>", "", "\u0000￿")) {
+            val answer = Answer("作者", content)
+            assertEquals(content, answer.answerContent)
+            assertEquals(content.length, answer.contentLength)
+        }
+    }
+
+    @Test
+    fun missingContentStaysNull() {
+        val answer = Answer(null, null)
+
+        assertNull(answer.answerContent)
+        assertNull(answer.authorName)
+        assertEquals(0, answer.contentLength)
+    }
+
+    @Test
+    fun authorNamesAreShared() {
+        val first = Answer(String(charArrayOf('作', '者')), "a")
+        val second = Answer(String(charArrayOf('作', '者')), "b")
+
+        assertSame(first.authorName, second.authorName)
+    }
+
+    @Test(expected = ContentException::class)
+    fun corruptedContentIsAContentError() {
+        corrupted().answerContent
+    }
+}
+
+// 压缩存储的正文被破坏的回答
+internal fun corrupted(): Answer {
+    val answer = Answer("作者", "<p>很长的回答</p>".repeat(100))
+    val field = Answer::class.java.getDeclaredField("content")
+    field.isAccessible = true
+    (field.get(answer) as ByteArray).fill(-1)
+    return answer
+}
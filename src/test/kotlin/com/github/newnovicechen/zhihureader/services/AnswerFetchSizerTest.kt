@@ -0,0 +1,53 @@
+package com.github.newnovicechen.zhihureader.services
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class AnswerFetchSizerTest {
+    private val millis = TimeUnit.MILLISECONDS::toNanos
+
+    @Test
+    fun startsWithOnePageUntilSomethingIsMeasured() {
+        assertEquals(ZhihuService.ANSWER_PAGE_SIZE, AnswerFetchSizer(0).nextSize())
+    }
+
+    @Test
+    fun shortAnswersOnAFastNetworkAreFetchedInLargeBatches() {
+        val sizer = AnswerFetchSizer(0)
+        // 10 个 2000 字的回答 100 毫秒
+        sizer.record(10, 20_000, millis(100))
+
+        assertEquals(50, sizer.nextSize())
+    }
+
+    @Test
+    fun hugeAnswersOrASlowNetworkSplitThePage() {
+        val huge = AnswerFetchSizer(0)
+        huge.record(10, 10 * 150_000, millis(300))
+        assertEquals(5, huge.nextSize())
+
+        val hugest = AnswerFetchSizer(0)
+        hugest.record(10, 10 * 300_000, millis(300))
+        assertEquals(3, hugest.nextSize())
+
+        val slow = AnswerFetchSizer(0)
+        slow.record(10, 30_000, millis(400))
+        assertEquals(20, slow.nextSize())
+        repeat(5) { slow.record(10, 30_000, millis(2_500)) }
+        assertEquals(5, slow.nextSize())
+    }
+
+    @Test
+    fun fixedSizeIsNotAdapted() {
+        val sizer = AnswerFetchSizer(20)
+        sizer.record(10, 20_000, millis(100))
+
+        assertEquals(20, sizer.nextSize())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun sizesAboveOnePageMustBeWholePages() {
+        AnswerFetchSizer(15)
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.model.Answer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.TimeUnit
+
+class AnswerPageCacheTest {
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private fun page(vararg contents: String) =
+        AnswerPageCache.Page(contents.map { Answer("author", it) }, "\"e\"", null, System.currentTimeMillis())
+
+    @Test
+    fun leastRecentlyUsedPageIsEvicted() {
+        val cache = AnswerPageCache(null, 2, 1, TimeUnit.HOURS)
+        cache.put("1", 0, page("a"))
+        cache.put("1", 10, page("b"))
+        cache.get("1", 0)
+        cache.put("1", 20, page("c"))
+
+        assertNull(cache.get("1", 10))
+        assertNotNull(cache.get("1", 0))
+        assertNotNull(cache.get("1", 20))
+        assertEquals(1, cache.stats.evictions)
+        assertEquals(3, cache.stats.memoryHits)
+        assertEquals(1, cache.stats.misses)
+    }
+
+    @Test
+    fun pagesSurviveInTheOfflineStore() {
+        val file = tmp.root.toPath().resolve("store.dat")
+        OfflineStore(file).use { AnswerPageCache(it, 10, 1, TimeUnit.HOURS).put("99", 0, page("<p>磁盘</p>")) }
+
+        OfflineStore(file).use { store ->
+            val reopened = AnswerPageCache(store, 10, 1, TimeUnit.HOURS)
+            val page = reopened.get("99", 0)
+
+            assertEquals("<p>磁盘</p>", page!!.answers[0].answerContent)
+            assertEquals("\"e\"", page.etag)
+            assertTrue(reopened.isFresh(page))
+            assertEquals(1, reopened.stats.diskHits)
+            // 离线存储里只有这一份
+            assertEquals(1, store.pageCount("99"))
+
+            // 清空只影响内存层
+            reopened.clear()
+            assertNotNull(reopened.get("99", 0))
+            assertEquals(2, reopened.stats.diskHits)
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.model.Answer
+import com.github.newnovicechen.zhihureader.utils.RequestGroup
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+class AnswerPageFlightsTest {
+
+    @Test
+    fun slowListenerDoesNotBlockJoiningCallers() {
+        val flights = AnswerPageFlights()
+        val key = AnswerPageFlights.Key("42", 0, true)
+        val result = CompletableFuture<List<Answer>>()
+        var push: Consumer<Answer>? = null
+        val release = CountDownLatch(1)
+        val first = CopyOnWriteArrayList<String>()
+        val second = CopyOnWriteArrayList<String>()
+
+        flights.load(key, RequestGroup(), { answer ->
+            first.add(answer.authorName)
+            // 模拟在回调里解析正文
+            release.await(5, TimeUnit.SECONDS)
+        }) { _, onAnswer ->
+            push = onAnswer
+            result
+        }
+        val loader = Thread {
+            push!!.accept(Answer("a1", "<p>1</p>"))
+            push!!.accept(Answer("a2", "<p>2</p>"))
+        }
+        loader.start()
+        while (first.isEmpty()) {
+            Thread.sleep(10)
+        }
+
+        // 第一个调用方还卡在回调里，第二个调用方加入时立即收到补发的回答
+        val start = System.nanoTime()
+        val joined = flights.load(key, RequestGroup(), { second.add(it.authorName) }) { _, _ -> throw AssertionError() }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000)
+        assertEquals(listOf("a1"), second)
+
+        release.countDown()
+        loader.join(5_000)
+        result.complete(emptyList())
+        joined.get(5, TimeUnit.SECONDS)
+        assertEquals(listOf("a1", "a2"), first)
+        assertEquals(listOf("a1", "a2"), second)
+    }
+}
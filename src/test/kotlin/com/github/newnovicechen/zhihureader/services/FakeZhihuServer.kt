@@ -0,0 +1,164 @@
+package com.github.newnovicechen.zhihureader.services
+
+import okhttp3.HttpUrl
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import java.io.Closeable
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 模拟的网络条件：每个响应在 latency ± jitter 之后返回响应头，响应体按 bytesPerSecond 限速（0 表示不限速），
+ * 以 errorRate 的概率返回 502/503，以 throttleRate 的概率返回知乎限流时的 403。
+ */
+data class NetworkProfile(
+    val name: String,
+    val latencyMillis: Long = 0,
+    val jitterMillis: Long = 0,
+    val bytesPerSecond: Long = 0,
+    val errorRate: Double = 0.0,
+    val throttleRate: Double = 0.0,
+) {
+    companion object {
+        val LOCAL = NetworkProfile("local")
+        val BROADBAND = NetworkProfile("broadband", latencyMillis = 30, jitterMillis = 10, bytesPerSecond = 2_000_000)
+        val SLOW = NetworkProfile("slow", latencyMillis = 200, jitterMillis = 50, bytesPerSecond = 200_000)
+        val FLAKY = NetworkProfile("flaky", latencyMillis = 20, jitterMillis = 10, errorRate = 0.1, throttleRate = 0.1)
+    }
+}
+
+/**
+ * 本地的知乎替身服务器，回放录制的推荐流、回答列表和回答详情响应，并按 [NetworkProfile] 注入延迟和故障。
+ *
+ * 录制的响应在 src/test/resources/zhihu-recordings 下，文件名由 [recordingName] 决定。响应里指向知乎的绝对地址
+ * （推荐流的下一页、回答详情地址）在返回时改写成本服务器的地址。
+ * ZhihuService 用 `setBaseUrls(fake.v3Url, fake.v4Url)` 指向它；在 runIde 中可以用
+ * `-Dzhihu.api.v3Url` / `-Dzhihu.api.v4Url`。
+ *
+ * 指定 recordDir 时是录制模式：本地没有的响应连同请求头（包括 Cookie）转发给 upstream，成功的响应保存到
+ * recordDir 再返回。录制模式不注入故障。
+ */
+class FakeZhihuServer(
+    private val profile: NetworkProfile = NetworkProfile.LOCAL,
+    private val recordDir: Path? = null,
+    private val upstream: HttpUrl = "https://www.zhihu.com/".toHttpUrl(),
+    seed: Long = 1,
+) : Closeable {
+    private val server = MockWebServer()
+    private val random = Random(seed)
+    private val upstreamClient by lazy { OkHttpClient() }
+    private val faults = AtomicInteger()
+
+    init {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse = respond(request)
+        }
+        server.start()
+    }
+
+    val v3Url: String get() = server.url("/api/v3").toString()
+    val v4Url: String get() = server.url("/api/v4").toString()
+
+    /** 收到的请求数，包括被注入故障的请求。 */
+    val requestCount: Int get() = server.requestCount
+
+    /** 注入的错误和限流响应数。 */
+    val faultCount: Int get() = faults.get()
+
+    override fun close() {
+        server.shutdown()
+    }
+
+    private fun respond(request: RecordedRequest): MockResponse {
+        val url = request.requestUrl!!
+        val name = recordingName(url) ?: return MockResponse().setResponseCode(404)
+        val recorded = load(name)
+        if (recorded == null) {
+            return if (recordDir != null) record(request, url, name) else MockResponse().setResponseCode(404)
+        }
+
+        val response = when (draw()) {
+            Fault.ERROR -> MockResponse().setResponseCode(if (random.nextBoolean()) 502 else 503)
+            Fault.THROTTLE -> MockResponse().setResponseCode(403)
+                .setBody("""{"error":{"code":10003,"message":"请求过于频繁，请稍后再试"}}""")
+            null -> MockResponse().setBody(rewrite(recorded)).setHeader("Content-Type", "application/json; charset=utf-8")
+        }
+        val jitter = if (profile.jitterMillis == 0L) 0 else synchronized(random) { random.nextLong(-profile.jitterMillis, profile.jitterMillis + 1) }
+        response.setHeadersDelay(maxOf(0, profile.latencyMillis + jitter), TimeUnit.MILLISECONDS)
+        if (profile.bytesPerSecond > 0) {
+            // 每 100 毫秒发送一份，避免整块到达
+            response.throttleBody(maxOf(1, profile.bytesPerSecond / 10), 100, TimeUnit.MILLISECONDS)
+        }
+        return response
+    }
+
+    private enum class Fault { ERROR, THROTTLE }
+
+    private fun draw(): Fault? {
+        val p = synchronized(random) { random.nextDouble() }
+        val fault = when {
+            p < profile.errorRate -> Fault.ERROR
+            p < profile.errorRate + profile.throttleRate -> Fault.THROTTLE
+            else -> null
+        }
+        if (fault != null) faults.incrementAndGet()
+        return fault
+    }
+
+    private fun load(name: String): String? {
+        recordDir?.resolve(name)?.takeIf { Files.exists(it) }?.let { return Files.readString(it) }
+        return javaClass.getResourceAsStream("/zhihu-recordings/$name")?.use { String(it.readAllBytes(), Charsets.UTF_8) }
+    }
+
+    private fun record(request: RecordedRequest, url: HttpUrl, name: String): MockResponse {
+        val target = url.newBuilder().scheme(upstream.scheme).host(upstream.host).port(upstream.port).build()
+        val builder = Request.Builder().url(target)
+        request.headers.forEach { (header, value) ->
+            // Host 和压缩由 OkHttp 自己处理
+            if (!header.equals("Host", true) && !header.equals("Accept-Encoding", true)) builder.header(header, value)
+        }
+        upstreamClient.newCall(builder.build()).execute().use { response ->
+            val body = response.body!!.string()
+            if (response.isSuccessful) {
+                val file = recordDir!!.resolve(name)
+                Files.createDirectories(file.parent)
+                Files.writeString(file, body)
+            }
+            return MockResponse().setResponseCode(response.code).setBody(if (response.isSuccessful) rewrite(body) else body)
+        }
+    }
+
+    private fun rewrite(body: String): String = body
+        .replace("https://www.zhihu.com/api/", server.url("/api/").toString())
+        .replace("https://api.zhihu.com/", server.url("/api/v4/").toString())
+
+    companion object {
+        private val ANSWER_LIST = Regex("/api/v4/questions/(\\d+)/answers")
+        private val ANSWER_DETAIL = Regex("/api/v4/answers/(\\d+)")
+
+        /**
+         * 请求对应的录制文件：feed/recommend-{page_number}.json、questions/{id}/answers-{offset}.json、answers/{id}.json。
+         */
+        fun recordingName(url: HttpUrl): String? {
+            val path = url.encodedPath
+            if (path == "/api/v3/feed/topstory/recommend") {
+                return "feed/recommend-${url.queryParameter("page_number") ?: 1}.json"
+            }
+            ANSWER_LIST.matchEntire(path)?.let {
+                return "questions/${it.groupValues[1]}/answers-${url.queryParameter("offset") ?: 0}.json"
+            }
+            ANSWER_DETAIL.matchEntire(path)?.let {
+                return "answers/${it.groupValues[1]}.json"
+            }
+            return null
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.utils.HttpEngine
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+import javax.imageio.ImageIO
+
+class ImageLoaderTest {
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private lateinit var server: MockWebServer
+    private lateinit var png: ByteArray
+
+    @Before
+    fun setUp() {
+        png = ByteArrayOutputStream().also { ImageIO.write(BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", it) }.toByteArray()
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse =
+                if (request.path!!.endsWith(".png")) MockResponse().setBody(Buffer().write(png))
+                else MockResponse().setResponseCode(404)
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        HttpEngine.shutdown()
+    }
+
+    private fun url(name: String) = server.url("/$name").toString()
+
+    @Test
+    fun largeImageIsDecodedAtDisplayWidth() {
+        val loader = ImageLoader(null, 64L * 1024 * 1024)
+
+        val image = loader.load(url("a.png"), 300).get(5, TimeUnit.SECONDS)
+
+        assertEquals(300, image.width)
+        assertEquals(150, image.height)
+        assertEquals(300L * 150 * 4, loader.memoryBytes)
+    }
+
+    @Test
+    fun memoryAndDiskCachesAvoidDownloads() {
+        val dir = tmp.newFolder().toPath()
+        val loader = ImageLoader(dir, 64L * 1024 * 1024)
+        val first = loader.load(url("a.png"), 300).get(5, TimeUnit.SECONDS)
+
+        assertSame(first, loader.load(url("a.png"), 300).get(5, TimeUnit.SECONDS))
+        assertEquals(1, server.requestCount)
+
+        // 新的加载器内存为空，从磁盘读取原始数据重新解码，还可以换一个宽度
+        val restarted = ImageLoader(dir, 64L * 1024 * 1024)
+        assertEquals(100, restarted.load(url("a.png"), 100).get(5, TimeUnit.SECONDS).width)
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun leastRecentlyUsedImagesAreEvictedOverBudget() {
+        // 每张 300x150 的图片占 180000 字节，预算只够两张
+        val loader = ImageLoader(null, 400_000)
+        loader.load(url("a.png"), 300).get(5, TimeUnit.SECONDS)
+        loader.load(url("b.png"), 300).get(5, TimeUnit.SECONDS)
+        loader.getCached(url("a.png"), 300)
+        loader.load(url("c.png"), 300).get(5, TimeUnit.SECONDS)
+
+        assertNotNull(loader.getCached(url("a.png"), 300))
+        assertNull(loader.getCached(url("b.png"), 300))
+        assertTrue(loader.memoryBytes <= 400_000)
+    }
+
+    @Test
+    fun leastRecentlyUsedFilesAreEvictedOverDiskBudget() {
+        val dir = tmp.newFolder().toPath()
+        // 磁盘预算够两张半，超出后删到九成，也就是删掉一张
+        val budget = png.size * 5L / 2
+        ImageLoader(dir, 64L * 1024 * 1024, budget).apply {
+            load(url("a.png"), 300).get(5, TimeUnit.SECONDS)
+            load(url("b.png"), 300).get(5, TimeUnit.SECONDS)
+        }
+        val now = System.currentTimeMillis()
+        Files.setLastModifiedTime(dir.resolve(ImageLoader.fileName(url("a.png"))), FileTime.fromMillis(now - 7_200_000))
+        Files.setLastModifiedTime(dir.resolve(ImageLoader.fileName(url("b.png"))), FileTime.fromMillis(now - 3_600_000))
+
+        val loader = ImageLoader(dir, 64L * 1024 * 1024, budget)
+        // 从磁盘读取 a，a 变成最近使用的
+        loader.load(url("a.png"), 100).get(5, TimeUnit.SECONDS)
+        loader.load(url("c.png"), 300).get(5, TimeUnit.SECONDS)
+
+        assertTrue(Files.exists(dir.resolve(ImageLoader.fileName(url("a.png")))))
+        assertFalse(Files.exists(dir.resolve(ImageLoader.fileName(url("b.png")))))
+        assertTrue(Files.exists(dir.resolve(ImageLoader.fileName(url("c.png")))))
+        assertEquals(3, server.requestCount)
+    }
+}
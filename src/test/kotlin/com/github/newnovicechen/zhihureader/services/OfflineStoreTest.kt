@@ -0,0 +1,95 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.model.Answer
+import com.github.newnovicechen.zhihureader.model.Question
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.Random
+
+class OfflineStoreTest {
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private fun answers(vararg contents: String) = contents.mapIndexed { i, c -> Answer("作者 $i", c) }
+
+    @Test
+    fun pagesAndQuestionsSurviveReopen() {
+        val file = tmp.root.toPath().resolve("store.dat")
+        val longAnswer = "<p>" + "很长的回答。".repeat(20_000) + "</p>" // 超过 writeUTF 的 64KB 限制
+        OfflineStore(file).use { store ->
+            store.putQuestion(Question("42", "问题"))
+            store.putPage("42", 0, answers("<p>a</p>", longAnswer))
+            store.putPage("42", 10, answers("<p>b</p>"))
+        }
+
+        OfflineStore(file).use { store ->
+            val page = store.getPage("42", 0)!!
+            assertEquals(longAnswer, page[1].answerContent)
+            assertEquals("作者 0", page[0].authorName)
+            assertEquals(2, store.pageCount("42"))
+            assertEquals(listOf("问题"), store.questionsWithPages().map { it.title })
+            assertNull(store.getPage("42", 20))
+            // 压缩后远小于原文
+            assertTrue(store.sizeBytes() < longAnswer.length / 10)
+        }
+    }
+
+    @Test
+    fun latestPageWinsAndCompactionDropsOldRecords() {
+        val file = tmp.root.toPath().resolve("store.dat")
+        OfflineStore(file).use { store ->
+            repeat(5) { store.putPage("1", 0, answers("<p>版本 $it</p>")) }
+            val before = store.sizeBytes()
+            store.compact()
+            assertTrue(store.sizeBytes() < before)
+            assertEquals("<p>版本 4</p>", store.getPage("1", 0)!![0].answerContent)
+        }
+        OfflineStore(file).use { assertEquals("<p>版本 4</p>", it.getPage("1", 0)!![0].answerContent) }
+    }
+
+    @Test
+    fun truncatedTailIsDroppedOnOpen() {
+        val file = tmp.root.toPath().resolve("store.dat")
+        OfflineStore(file).use { store ->
+            store.putPage("1", 0, answers("<p>完整</p>"))
+            store.putPage("1", 10, answers("<p>写到一半</p>"))
+        }
+        // 模拟写入第二条记录时进程退出
+        FileChannel.open(file, StandardOpenOption.WRITE).use { it.truncate(it.size() - 5) }
+
+        OfflineStore(file).use { store ->
+            assertEquals("<p>完整</p>", store.getPage("1", 0)!![0].answerContent)
+            assertNull(store.getPage("1", 10))
+            store.putPage("1", 10, answers("<p>重新写入</p>"))
+        }
+        OfflineStore(file).use { assertEquals("<p>重新写入</p>", it.getPage("1", 10)!![0].answerContent) }
+    }
+
+    @Test
+    fun oldestPagesAreEvictedOverTheSizeCap() {
+        val file = tmp.root.toPath().resolve("store.dat")
+        val random = Random(1)
+        // 随机内容几乎压缩不了，每页大约 2KB
+        fun noise() = (1..2048).map { 'a' + random.nextInt(26) }.joinToString("")
+        OfflineStore(file, 16 * 1024).use { store ->
+            store.putQuestion(Question("1", "问题"))
+            repeat(20) { store.putPage("1", it * 10, answers(noise())) }
+
+            // 淘汰立即生效，文件在后台重写
+            assertNull(store.getPage("1", 0))
+            store.awaitCompaction()
+            assertTrue(store.sizeBytes() <= 16 * 1024)
+            assertTrue(store.evictions() > 0)
+            assertNull(store.getPage("1", 0))
+            assertTrue(store.containsPage("1", 190))
+            assertEquals(listOf("问题"), store.questionsWithPages().map { it.title })
+        }
+        OfflineStore(file, 16 * 1024).use { assertTrue(it.containsPage("1", 190)) }
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.utils.HttpEngine
+import com.github.newnovicechen.zhihureader.utils.HttpMetrics
+import com.github.newnovicechen.zhihureader.utils.LatencyHistogram
+import com.github.newnovicechen.zhihureader.utils.RequestGroup
+import com.github.newnovicechen.zhihureader.utils.ResilienceInterceptor
+import com.intellij.openapi.diagnostic.Logger
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.TimeUnit
+
+private const val QUESTION_ID = "19550225"
+// 第一页中没有内联正文、需要单独请求详情的回答数
+private const val COLLAPSED_ANSWERS = 2
+
+private val LOG = Logger.getInstance(PageLoadLatencyTest::class.java)
+
+private val HttpMetrics.firstAnswer: LatencyHistogram get() = histogram(HttpMetrics.Phase.FIRST_ANSWER)
+private val HttpMetrics.page: LatencyHistogram get() = histogram(HttpMetrics.Phase.PAGE)
+
+/**
+ * 对录制的知乎响应做端到端加载，测量不同网络条件下首个回答显示的时间和整页加载时间。
+ */
+class PageLoadLatencyTest {
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private val servers = mutableListOf<FakeZhihuServer>()
+    private val stores = mutableListOf<OfflineStore>()
+
+    @Before
+    fun setUp() {
+        HttpEngine.shutdown()
+        // 重试退避缩短到毫秒级，熔断阈值放宽，故障注入不会让测试等上几秒
+        HttpEngine.configureResilience(ResilienceInterceptor.Config(1000.0, 100, 5, 5, 200, 100, 60_000))
+    }
+
+    @After
+    fun tearDown() {
+        stores.forEach { it.close() }
+        servers.forEach { it.close() }
+        HttpEngine.configureResilience(ResilienceInterceptor.Config.fromSystemProperties())
+        HttpEngine.shutdown()
+    }
+
+    private fun fakeServer(profile: NetworkProfile): FakeZhihuServer = FakeZhihuServer(profile).also { servers += it }
+
+    // 每次都是新的缓存和离线存储，测到的是冷加载
+    private fun newService(fake: FakeZhihuServer): ZhihuService {
+        val service = ZhihuService()
+        service.setUserCookie("z_c0=test")
+        service.setBaseUrls(fake.v3Url, fake.v4Url)
+        service.setAnswerCache(AnswerPageCache(null, 50, 30, TimeUnit.MINUTES))
+        val store = OfflineStore(tmp.newFolder().toPath().resolve("offline.dat"))
+        stores += store
+        service.setOfflineStore(store)
+        return service
+    }
+
+    // 每种网络条件单独统计，不混进共用的 HttpMetrics
+    private fun measure(profile: NetworkProfile, runs: Int): HttpMetrics {
+        val fake = fakeServer(profile)
+        val timings = HttpMetrics()
+        repeat(runs) {
+            val service = newService(fake)
+            var firstAt = 0L
+            val start = System.nanoTime()
+            val answers = service.zhihuAnswer(QUESTION_ID, 0, RequestGroup()) {
+                if (firstAt == 0L) firstAt = System.nanoTime()
+            }
+            val end = System.nanoTime()
+            assertEquals(10, answers.size)
+            timings.record(HttpMetrics.Phase.FIRST_ANSWER, firstAt - start)
+            timings.record(HttpMetrics.Phase.PAGE, end - start)
+        }
+        LOG.info("${profile.name} 网络下的加载耗时：\n${timings.report()}")
+        return timings
+    }
+
+    @Test
+    fun replaysRecordedFeedAndAnswers() {
+        val fake = fakeServer(NetworkProfile.LOCAL)
+        val service = newService(fake)
+
+        val feed = service.newRecommendFeed()
+        val first = feed.loadMore(RequestGroup())
+        assertEquals("如何系统地学习 Java 性能调优？", first[0].title)
+        feed.loadMore(RequestGroup())
+        assertEquals(12, feed.size())
+        assertFalse(feed.hasMore())
+
+        val answers = service.zhihuAnswer(QUESTION_ID, 0)
+        assertEquals((0 until 10).map { "答主$it" }, answers.map { it.authorName })
+        // 被折叠的回答通过改写后的详情地址从替身服务器取到
+        assertTrue(answers.none { it.answerContent.contains("加载失败") })
+        assertEquals(2 + 1 + COLLAPSED_ANSWERS, fake.requestCount)
+    }
+
+    @Test
+    fun firstAnswerArrivesBeforeTheWholePageOnSlowNetworks() {
+        measure(NetworkProfile.LOCAL, 5)
+        val broadband = measure(NetworkProfile.BROADBAND, 5)
+        val slow = measure(NetworkProfile.SLOW, 5)
+
+        // 列表返回之后内联的回答就能显示，被折叠的回答还要再等一轮详情请求
+        val latency = NetworkProfile.SLOW.latencyMillis - NetworkProfile.SLOW.jitterMillis
+        assertTrue(slow.firstAnswer.percentileMillis(50.0) >= latency)
+        assertTrue(slow.page.percentileMillis(50.0) >= slow.firstAnswer.percentileMillis(50.0) + latency)
+        assertTrue(slow.page.percentileMillis(50.0) > broadband.page.percentileMillis(50.0))
+    }
+
+    @Test
+    fun injectedErrorsAndThrottlingAreRetried() {
+        val runs = 10
+        val timings = measure(NetworkProfile.FLAKY, runs)
+
+        val fake = servers.single()
+        assertEquals(runs.toLong(), timings.page.count)
+        // 每个注入的故障恰好多出一次重试请求，没有请求被放弃
+        assertEquals(runs * (1 + COLLAPSED_ANSWERS) + fake.faultCount, fake.requestCount)
+    }
+}
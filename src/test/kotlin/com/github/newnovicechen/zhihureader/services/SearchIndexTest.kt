@@ -0,0 +1,88 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.model.Answer
+import com.github.newnovicechen.zhihureader.model.Question
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class SearchIndexTest {
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    // 模拟离线存储，重新索引时从这里取原文
+    private val pages = HashMap<Pair<String, Int>, List<Answer>>()
+
+    private fun open(flushDocs: Int = 1000) =
+        SearchIndex(tmp.root.toPath(), { q, o -> pages[q to o] }, flushDocs)
+
+    private fun SearchIndex.put(questionId: String, offset: Int, vararg answers: Answer) {
+        pages[questionId to offset] = answers.toList()
+        addPage(questionId, offset, answers.toList())
+    }
+
+    @Test
+    fun chineseTextIsFoundByAnyAdjacentCharacters() {
+        open().use { index ->
+            index.addQuestion(Question("1", "如何评价机器学习"))
+            index.put("1", 0, Answer("张三", "<p>深度<b>学习</b>改变了很多行业。</p>"), Answer("李四", "<p>Kotlin 协程</p>"))
+
+            val hits = index.search("学习", 10)
+            // 标题命中的问题排在回答前面
+            assertTrue(hits[0].isQuestion)
+            assertEquals("如何评价机器学习", hits[0].title)
+            assertEquals("张三", hits[1].authorName)
+            assertTrue(hits[1].snippet.contains("深度学习改变了很多行业"))
+
+            assertEquals(listOf(1), index.search("kotlin", 10).map { it.answerIndex })
+            assertEquals(listOf("李四"), index.search("李四", 10).map { it.authorName })
+            assertTrue(index.search("学习 协程", 10).isEmpty())
+            assertTrue(index.search("不存在", 10).isEmpty())
+        }
+    }
+
+    @Test
+    fun changedPageReplacesTheOldDocuments() {
+        open().use { index ->
+            index.put("1", 0, Answer("a", "<p>旧的内容</p>"))
+            index.put("1", 0, Answer("a", "<p>新的内容</p>"))
+
+            assertTrue(index.search("旧的", 10).isEmpty())
+            assertEquals(1, index.search("新的", 10).size)
+        }
+    }
+
+    @Test
+    fun segmentsAndUnflushedDocumentsSurviveReopen() {
+        open(flushDocs = 10).use { index ->
+            // 每页 3 个回答，写出多个段并触发合并，最后几个文档留在内存中
+            for (page in 0 until 40) {
+                index.put("q$page", 0, *Array(3) { Answer("作者$page", "<p>第${page}页的回答，关键词</p>") })
+            }
+            assertTrue(index.segmentCount in 1..8)
+        }
+        open(flushDocs = 10).use { index ->
+            assertEquals(120, index.documentCount)
+            assertEquals(50, index.search("关键词", 50).size)
+            assertEquals(3, index.search("作者39", 50).size)
+            assertEquals(3, index.search("作者0", 50).size)
+        }
+    }
+
+    @Test
+    fun snippetsOfLongAnswersComeFromTheIndexAfterReopen() {
+        val body = (0 until 5_000).joinToString("") { "<p>第${it}段  填充\n文字</p>" }
+        open().use { index ->
+            index.put("1", 0, Answer("张三", body + "<p>结尾处讲到   深度学习</p>"))
+        }
+        // 摘要不再从离线存储取原文
+        pages.clear()
+        open().use { index ->
+            val hit = index.search("深度学习", 10).single()
+            assertEquals("张三", hit.authorName)
+            assertEquals("…段 填充 文字 第4998段 填充 文字 第4999段 填充 文字 结尾处讲到 深度学习", hit.snippet)
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.github.newnovicechen.zhihureader.services
+
+import com.github.newnovicechen.zhihureader.exception.HttpException
+import com.github.newnovicechen.zhihureader.model.Answer
+import com.github.newnovicechen.zhihureader.model.Question
+import com.github.newnovicechen.zhihureader.utils.HttpEngine
+import com.github.newnovicechen.zhihureader.utils.RequestGroup
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.fail
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+private const val ETAG = "\"page-v1\""
+
+class ZhihuServiceTest {
+    private lateinit var server: MockWebServer
+    private lateinit var service: ZhihuService
+    private lateinit var offlineStore: OfflineStore
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    // 列表中没有正文的回答序号（模拟被折叠或接口未返回 content 的回答）
+    private var missingContent = emptySet<Int>()
+    private var failingDetail = emptySet<Int>()
+    private var listDelayMillis = 0L
+    private var slowDetail = emptySet<Int>()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val path = request.requestUrl!!.encodedPath
+                return when {
+                    path == "/api/v3/feed/topstory/recommend" -> MockResponse().setBody(feedPage(request))
+                    path == "/api/v4/questions/42/answers" && request.getHeader("If-None-Match") == ETAG ->
+                        MockResponse().setResponseCode(304).setHeader("ETag", ETAG)
+                    path == "/api/v4/questions/42/answers" -> MockResponse().setBody(answerList(request)).setHeader("ETag", ETAG)
+                        .setHeadersDelay(listDelayMillis, TimeUnit.MILLISECONDS)
+                    path.startsWith("/api/v4/answers/") -> {
+                        val index = path.substringAfterLast('/').toInt()
+                        if (index in failingDetail) MockResponse().setResponseCode(500)
+                        else MockResponse().setBody("""{"content":"<p>detail $index</p>","author":{"name":"author $index"}}""")
+                            .setHeadersDelay(if (index in slowDetail) 1_000 else 0, TimeUnit.MILLISECONDS)
+                    }
+                    else -> MockResponse().setResponseCode(404)
+                }
+            }
+        }
+        server.start()
+
+        service = ZhihuService()
+        service.setUserCookie("z_c0=test")
+        service.setBaseUrls(server.url("/api/v3").toString(), server.url("/api/v4").toString())
+        service.setAnswerCache(AnswerPageCache(null, 50, 30, TimeUnit.MINUTES))
+        offlineStore = OfflineStore(tmp.root.toPath().resolve("offline.dat"))
+        service.setOfflineStore(offlineStore)
+    }
+
+    @After
+    fun tearDown() {
+        offlineStore.close()
+        server.shutdown()
+        HttpEngine.shutdown()
+    }
+
+    // 每页 5 个问题，相邻两页有 2 个问题重复，共 3 页
+    private fun feedPage(request: RecordedRequest): String {
+        val page = request.requestUrl!!.queryParameter("page_number")?.toInt() ?: 1
+        val items = (0 until 5).joinToString(",") { i ->
+            val id = (page - 1) * 3 + i
+            """{"target":{"question":{"id":$id,"title":"问题 $id"}}}"""
+        }
+        val next = server.url("/api/v3/feed/topstory/recommend?page_number=${page + 1}")
+        return """{"data":[$items],"paging":{"is_end":${page == 3},"next":"$next"}}"""
+    }
+
+    private fun answerList(request: RecordedRequest): String {
+        val inline = request.requestUrl!!.queryParameter("include") != null
+        val offset = request.requestUrl!!.queryParameter("offset")!!.toInt()
+        val limit = request.requestUrl!!.queryParameter("limit")!!.toInt()
+        val items = (offset until offset + limit).joinToString(",") { i ->
+            val url = "\"url\":\"${server.url("/api/v4/answers/$i")}\""
+            if (inline && i !in missingContent) {
+                """{$url,"content":"<p>inline $i</p>","author":{"name":"author $i"}}"""
+            } else {
+                """{$url,"author":{"name":"author $i"}}"""
+            }
+        }
+        return """{"data":[$items]}"""
+    }
+
+    @Test
+    fun inlineModeNeedsOneRequestPerPage() {
+        val answers = service.zhihuAnswer("42", 0)
+
+        assertEquals(1, server.requestCount)
+        assertEquals(10, answers.size)
+        assertEquals("<p>inline 0</p>", answers[0].answerContent)
+        assertEquals("author 9", answers[9].authorName)
+
+        service.zhihuAnswer("42", 10)
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    fun onlyAnswersWithoutInlineContentAreFetchedSeparately() {
+        missingContent = setOf(3, 7)
+
+        val answers = service.zhihuAnswer("42", 0)
+
+        assertEquals(3, server.requestCount)
+        assertEquals("<p>detail 3</p>", answers[3].answerContent)
+        assertEquals("<p>detail 7</p>", answers[7].answerContent)
+        assertEquals("<p>inline 8</p>", answers[8].answerContent)
+    }
+
+    @Test
+    fun legacyModeFetchesEveryAnswerInOrder() {
+        service.setInlineAnswerContent(false)
+
+        val answers = service.zhihuAnswer("42", 0)
+
+        assertEquals(11, server.requestCount)
+        answers.forEachIndexed { i, answer -> assertEquals("<p>detail $i</p>", answer.answerContent) }
+    }
+
+    @Test
+    fun failedDetailDoesNotFailThePage() {
+        service.setInlineAnswerContent(false)
+        failingDetail = setOf(5)
+
+        val answers = service.zhihuAnswer("42", 0)
+
+        assertEquals(10, answers.size)
+        assertTrue(answers[5].answerContent.contains("加载失败"))
+        assertEquals("<p>detail 6</p>", answers[6].answerContent)
+    }
+
+    @Test
+    fun answersAreDeliveredInOrderBeforeTheSlowestOneArrives() {
+        missingContent = setOf(9)
+        slowDetail = setOf(9)
+        val delivered = mutableListOf<String>()
+        var firstAt = 0L
+
+        val start = System.nanoTime()
+        val answers = service.zhihuAnswer("42", 0, RequestGroup()) {
+            if (delivered.isEmpty()) firstAt = System.nanoTime()
+            delivered += it.answerContent
+        }
+        val pageMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        assertEquals(answers.map { it.answerContent }, delivered)
+        assertTrue(pageMillis >= 1_000)
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(firstAt - start) < pageMillis - 500)
+    }
+
+    @Test
+    fun cachedPageCostsNoRequests() {
+        val first = service.zhihuAnswer("42", 0)
+        service.zhihuAnswer("42", 10)
+        val again = service.zhihuAnswer("42", 0)
+
+        assertEquals(2, server.requestCount)
+        assertEquals(first.map { it.answerContent }, again.map { it.answerContent })
+        assertEquals(1, service.answerCache().stats.memoryHits)
+    }
+
+    @Test
+    fun pagesWithFailedAnswersAreNotCached() {
+        service.setInlineAnswerContent(false)
+        failingDetail = setOf(2)
+
+        service.zhihuAnswer("42", 0)
+        service.zhihuAnswer("42", 0)
+
+        assertEquals(22, server.requestCount)
+    }
+
+    @Test
+    fun expiredPageIsRevalidatedWithEtag() {
+        service.setAnswerCache(AnswerPageCache(null, 50, 1, TimeUnit.MILLISECONDS))
+        service.zhihuAnswer("42", 0)
+        Thread.sleep(5)
+
+        val answers = service.zhihuAnswer("42", 0)
+
+        assertEquals(2, server.requestCount)
+        server.takeRequest()
+        assertEquals(ETAG, server.takeRequest().getHeader("If-None-Match"))
+        assertEquals("<p>inline 0</p>", answers[0].answerContent)
+        assertEquals(1, service.answerCache().stats.revalidations)
+    }
+
+    @Test
+    fun prefetchedNextPageIsServedFromCache() {
+        service.zhihuAnswer("42", 0)
+        service.prefetcher().prefetchNextPage("42", 0)
+
+        val deadline = System.currentTimeMillis() + 5000
+        while (!service.answerCache().containsFresh("42", 10) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        val next = service.zhihuAnswer("42", 10)
+
+        assertEquals(2, server.requestCount)
+        assertEquals("<p>inline 10</p>", next[0].answerContent)
+    }
+
+    @Test
+    fun largerFetchSizeServesFollowingPagesFromCache() {
+        val first = service.zhihuAnswer("42", 0, 30, RequestGroup())
+
+        assertEquals(10, first.size)
+        assertEquals("30", server.takeRequest().requestUrl!!.queryParameter("limit"))
+        assertEquals("<p>inline 10</p>", service.zhihuAnswer("42", 10)[0].answerContent)
+        assertEquals("<p>inline 29</p>", service.zhihuAnswer("42", 20)[9].answerContent)
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun followingPagesWithoutInlineContentAreNotCached() {
+        missingContent = setOf(15)
+
+        service.zhihuAnswer("42", 0, 30, RequestGroup())
+        val next = service.zhihuAnswer("42", 10)
+
+        assertEquals("<p>detail 15</p>", next[5].answerContent)
+        assertTrue(service.answerCache().containsFresh("42", 20))
+        assertEquals(3, server.requestCount)
+    }
+
+    @Test
+    fun cancellingTheGroupAbortsTheLoad() {
+        listDelayMillis = 5_000
+        val group = RequestGroup()
+        Thread { Thread.sleep(200); group.cancel() }.start()
+
+        val start = System.nanoTime()
+        try {
+            service.zhihuAnswer("42", 0, group)
+            fail("取消后不应返回结果")
+        } catch (expected: CancellationException) {
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000)
+        assertNull(service.answerCache().get("42", 0))
+    }
+
+    @Test
+    fun concurrentLoadsOfTheSamePageShareOneRequest() {
+        listDelayMillis = 300
+        val delivered = List(4) { CopyOnWriteArrayList<String>() }
+
+        val loads = delivered.map { sink ->
+            CompletableFuture.supplyAsync { service.zhihuAnswer("42", 0, RequestGroup()) { sink += it.answerContent } }
+        }
+        val pages = loads.map { it.get(5, TimeUnit.SECONDS) }
+
+        assertEquals(1, server.requestCount)
+        pages.forEach { assertEquals(pages[0], it) }
+        // 后加入的调用方也按顺序收到了每个回答
+        delivered.forEach { assertEquals(pages[0].map { a -> a.answerContent }, it) }
+    }
+
+    @Test
+    fun cancelledCallerLeavesTheSharedLoadRunning() {
+        listDelayMillis = 500
+        val other = CompletableFuture.supplyAsync { service.zhihuAnswer("42", 0) }
+        server.takeRequest(1, TimeUnit.SECONDS)
+
+        val group = RequestGroup()
+        Thread { Thread.sleep(100); group.cancel() }.start()
+        try {
+            service.zhihuAnswer("42", 0, group)
+            fail("取消后不应返回结果")
+        } catch (expected: CancellationException) {
+        }
+
+        assertEquals(10, other.get(5, TimeUnit.SECONDS).size)
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun smallBatchesAreStitchedIntoOnePage() {
+        service.setAnswerFetchSize(3)
+        val streamed = CopyOnWriteArrayList<String>()
+
+        val answers = service.zhihuAnswer("42", 0, RequestGroup()) { streamed += it.authorName }
+
+        // 3 + 3 + 3 + 1
+        assertEquals(4, server.requestCount)
+        assertEquals(List(10) { "author $it" }, answers.map { it.authorName })
+        assertEquals(answers.map { it.authorName }, streamed)
+        val offsets = List(4) { server.takeRequest().requestUrl!!.queryParameter("offset") }
+        assertEquals(listOf("0", "3", "6", "9"), offsets)
+
+        // 拼好的一页整页放进缓存
+        service.zhihuAnswer("42", 0)
+        assertEquals(4, server.requestCount)
+    }
+
+    @Test
+    fun asyncLoadDoesNotBlockAndCallsBackOnTheConfiguredExecutor() {
+        listDelayMillis = 300
+        val executor = Executors.newSingleThreadExecutor { Thread(it, "zhihu-test-executor") }
+        service.setExecutor(executor)
+        val threads = CopyOnWriteArrayList<String>()
+
+        val start = System.nanoTime()
+        val future = service.zhihuAnswerAsync("42", 0, RequestGroup()) { threads += Thread.currentThread().name }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200)
+
+        assertEquals(10, future.get(5, TimeUnit.SECONDS).size)
+        assertEquals(List(10) { "zhihu-test-executor" }, threads)
+        executor.shutdown()
+    }
+
+    @Test
+    fun asyncLoadDoesNotTouchDiskOnTheCallingThread() {
+        val cache = AnswerPageCache(offlineStore, 50, 30, TimeUnit.MINUTES)
+        val answers = (0 until 10).map { Answer("author $it", "<p>stored $it</p>") }
+        offlineStore.putPage("42", 0, AnswerPageCache.Page(answers, ETAG, null, System.currentTimeMillis()))
+        service.setAnswerCache(cache)
+        // 线程池里的任务先存下来，由测试线程在调用返回之后执行
+        val tasks = LinkedBlockingQueue<Runnable>()
+        service.setExecutor { tasks.add(it) }
+
+        val future = service.zhihuAnswerAsync("42", 0, RequestGroup(), null)
+        assertEquals(0, cache.stats.diskHits + cache.stats.misses)
+
+        while (!future.isDone) {
+            tasks.poll(5, TimeUnit.SECONDS)!!.run()
+        }
+        assertEquals(1, cache.stats.diskHits)
+        assertEquals("<p>stored 0</p>", future.get()[0].answerContent)
+        assertEquals(0, server.requestCount)
+    }
+
+    @Test
+    fun cancellingTheFutureCancelsTheRequest() {
+        listDelayMillis = 5_000
+        val future = service.zhihuAnswerAsync("42", 0, RequestGroup(), null)
+        server.takeRequest(1, TimeUnit.SECONDS)
+
+        future.cancel(true)
+
+        val dispatcher = HttpEngine.apiClient().dispatcher
+        val deadline = System.currentTimeMillis() + 2_000
+        while (dispatcher.runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(0, dispatcher.runningCallsCount())
+        assertNull(service.answerCache().get("42", 0))
+    }
+
+    @Test
+    fun recommendFeedFollowsCursorAndDeduplicates() {
+        val feed = service.newRecommendFeed()
+        val ids = mutableListOf<String>()
+        while (feed.hasMore()) {
+            ids += feed.loadMore(RequestGroup()).map { it.id }
+        }
+
+        assertEquals((0..10).map { it.toString() }, ids)
+        assertEquals(3, server.requestCount)
+        assertTrue(feed.loadMore(RequestGroup()).isEmpty())
+        assertEquals(3, server.requestCount)
+    }
+
+    @Test
+    fun downloadedPagesAreReadOfflineWhenTheNetworkIsDown() {
+        val saved = service.downloadForOffline(Question("42", "离线问题"), 2, RequestGroup(), null)
+        assertEquals(2, saved)
+
+        server.shutdown()
+        // 新的服务实例没有内存缓存，只能从离线存储读取
+        val offline = ZhihuService()
+        offline.setUserCookie("z_c0=test")
+        offline.setBaseUrls(server.url("/api/v3").toString(), server.url("/api/v4").toString())
+        offline.setAnswerCache(AnswerPageCache(null, 50, 30, TimeUnit.MINUTES))
+        offline.setOfflineStore(offlineStore)
+
+        assertEquals("<p>inline 10</p>", offline.zhihuAnswer("42", 10)[0].answerContent)
+        assertEquals(listOf("离线问题"), offline.zhihuRecommend().map { it.title })
+        try {
+            offline.zhihuAnswer("42", 20)
+            fail("没有离线保存的页面应该抛出异常")
+        } catch (e: HttpException) {
+            // 预期
+        }
+    }
+}
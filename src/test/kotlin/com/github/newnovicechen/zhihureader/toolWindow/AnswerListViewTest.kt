@@ -0,0 +1,127 @@
+package com.github.newnovicechen.zhihureader.toolWindow
+
+import com.github.newnovicechen.zhihureader.model.Answer
+import com.github.newnovicechen.zhihureader.model.Question
+import com.github.newnovicechen.zhihureader.services.ImageLoader
+import com.github.newnovicechen.zhihureader.utils.HttpEngine
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okio.Buffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.awt.Point
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.TimeUnit
+import javax.imageio.ImageIO
+import javax.swing.JScrollPane
+import javax.swing.SwingUtilities
+
+class AnswerListViewTest {
+    private val loader = ImageLoader(null, 1024 * 1024)
+
+    private fun longPage(): AnswerPageView {
+        val paragraph = "<p>" + "知乎回答正文。".repeat(200) + "</p>"
+        val answers = (1..10).map { Answer("作者 $it", paragraph.repeat(5)) }
+        return AnswerPageView(Question("42", "长问题"), 0, answers, 600)
+    }
+
+    private fun <T> onEdt(block: () -> T): T {
+        var result: T? = null
+        SwingUtilities.invokeAndWait { result = block() }
+        @Suppress("UNCHECKED_CAST")
+        return result as T
+    }
+
+    // 没有显示出来的组件不会被 validate 排版，这里直接按 Swing 的顺序调用布局，
+    // 并等待后台构建的行组件加入列表，直到没有正在构建的行
+    private fun JScrollPane.layoutNow(view: AnswerListView) {
+        val deadline = System.currentTimeMillis() + 10_000
+        do {
+            val building = onEdt {
+                setSize(600, 400)
+                repeat(3) {
+                    doLayout()
+                    viewport.doLayout()
+                    viewport.view.doLayout()
+                }
+                view.isBuildingRows
+            }
+            if (!building) return
+            Thread.sleep(10)
+        } while (System.currentTimeMillis() < deadline)
+        throw AssertionError("行组件没有构建完成")
+    }
+
+    @Test
+    fun onlyRowsNearTheViewportAreRealized() {
+        val view = onEdt { AnswerListView { ZhihuHtmlEditorKit(loader, 600) } }
+        val scrollPane = onEdt { JScrollPane(view).also { view.setPage(longPage()) } }
+        scrollPane.layoutNow(view)
+
+        onEdt {
+            assertEquals(11, view.rowCount)
+            assertTrue(view.realizedRowCount in 1..3)
+            scrollPane.viewport.viewPosition = Point(0, view.preferredSize.height - 400)
+        }
+        scrollPane.layoutNow(view)
+
+        onEdt { assertTrue(view.realizedRowCount in 1..3) }
+    }
+
+    @Test
+    fun switchingModeKeepsTheListVirtualized() {
+        val page = longPage()
+        val view = onEdt { AnswerListView { ZhihuHtmlEditorKit(loader, 600) } }
+        val scrollPane = onEdt { JScrollPane(view).also { view.setPage(page) } }
+        scrollPane.layoutNow(view)
+
+        onEdt { view.setHtmlMode(false) }
+        scrollPane.layoutNow(view)
+
+        onEdt {
+            assertTrue(view.realizedRowCount in 1..3)
+            assertTrue(page.plainText().contains("=== 回答 10 ==="))
+        }
+    }
+
+    @Test
+    fun rowGrowsWhenAnImageLoadsAfterItWasRealized() {
+        val png = ByteArrayOutputStream().also { ImageIO.write(BufferedImage(600, 900, BufferedImage.TYPE_INT_RGB), "png", it) }
+        val server = MockWebServer()
+        server.enqueue(MockResponse().setBody(Buffer().write(png.toByteArray())).setHeadersDelay(200, TimeUnit.MILLISECONDS))
+        server.start()
+        try {
+            // 没有 data-rawwidth/data-rawheight，先按 120 像素的占位框排版
+            val answers = listOf(Answer("作者", "<p>图片</p><img src=\"${server.url("/a.png")}\">"), Answer("作者 2", "<p>下一个回答</p>"))
+            val view = onEdt { AnswerListView { ZhihuHtmlEditorKit(ImageLoader(null, 16L * 1024 * 1024), 600) } }
+            val scrollPane = onEdt { JScrollPane(view).also { view.setPage(AnswerPageView(Question("42", "问题"), 0, answers, 600)) } }
+            scrollPane.layoutNow(view)
+            val before = onEdt { view.getRowHeight(1) }
+            assertTrue(before in 1 until 900)
+
+            // 第一次绘制时才开始加载图片
+            onEdt {
+                val g = BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB).createGraphics()
+                view.paint(g)
+                g.dispose()
+            }
+            val deadline = System.currentTimeMillis() + 10_000
+            while (onEdt { view.getRowHeight(1) } < 900 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20)
+                scrollPane.layoutNow(view)
+            }
+
+            onEdt {
+                assertTrue(view.getRowHeight(1) >= 900)
+                // 后面的行跟着下移，不和图片重叠
+                val rows = view.components.sortedBy { it.y }
+                rows.zipWithNext().forEach { (a, b) -> assertEquals(a.y + a.height, b.y) }
+            }
+        } finally {
+            server.shutdown()
+            HttpEngine.shutdown()
+        }
+    }
+}
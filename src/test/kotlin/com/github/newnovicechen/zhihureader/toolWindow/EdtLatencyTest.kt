@@ -0,0 +1,131 @@
+package com.github.newnovicechen.zhihureader.toolWindow
+
+import com.github.newnovicechen.zhihureader.model.Answer
+import com.github.newnovicechen.zhihureader.model.Question
+import com.github.newnovicechen.zhihureader.services.ImageLoader
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.awt.AWTEvent
+import java.awt.EventQueue
+import java.awt.Toolkit
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.swing.JScrollPane
+import javax.swing.SwingUtilities
+
+/**
+ * 逐个加载一页大回答时，EDT 上单个事件的最长耗时。HTML 处理和文档构建在后台线程上，
+ * EDT 上是追加行、为可见的行创建组件并测量高度，以及摆放可见的行；每个事件最多实现一行。
+ */
+class EdtLatencyTest {
+    private val loader = ImageLoader(null, 1024 * 1024)
+    private val queue = TimingEventQueue()
+
+    // 记录每个事件的处理时间
+    private class TimingEventQueue : EventQueue() {
+        @Volatile
+        var maxNanos = 0L
+
+        public override fun dispatchEvent(event: AWTEvent) {
+            val start = System.nanoTime()
+            super.dispatchEvent(event)
+            val elapsed = System.nanoTime() - start
+            if (elapsed > maxNanos) maxNanos = elapsed
+        }
+
+        fun detach() = pop()
+    }
+
+    @Before
+    fun setUp() {
+        // 先用一个小回答走一遍显示流程，EDT 启动和 Swing 文本类的加载不计入测量
+        val page = AnswerPageView(Question("1", "预热"), 0, listOf(Answer("作者", "<p>预热<img src=\"x\"/></p>")), 600)
+        lateinit var view: AnswerListView
+        lateinit var scrollPane: JScrollPane
+        SwingUtilities.invokeAndWait {
+            view = AnswerListView { ZhihuHtmlEditorKit(loader, 600) }
+            scrollPane = JScrollPane(view)
+            view.setPage(page)
+        }
+        scrollPane.layoutUntilBuilt(view)
+        Toolkit.getDefaultToolkit().systemEventQueue.push(queue)
+    }
+
+    @After
+    fun tearDown() {
+        queue.detach()
+    }
+
+    private fun JScrollPane.layoutNow() {
+        setSize(600, 400)
+        repeat(3) {
+            doLayout()
+            viewport.doLayout()
+            viewport.view.doLayout()
+        }
+    }
+
+    private fun JScrollPane.layoutUntilBuilt(view: AnswerListView) {
+        val deadline = System.currentTimeMillis() + 10_000
+        var building = true
+        while (building && System.currentTimeMillis() < deadline) {
+            SwingUtilities.invokeAndWait {
+                layoutNow()
+                building = view.isBuildingRows
+            }
+            Thread.sleep(10)
+        }
+    }
+
+    @Test
+    fun streamingLargeAnswersKeepsEdtResponsive() {
+        val content = StringBuilder()
+        while (content.length < 50 * 1024) {
+            content.append("<p>知乎回答正文，包含<b>加粗</b>和<a href=\"https://zhuanlan.zhihu.com\">链接</a>。")
+                .append("这是一段比较长的文字，用来模拟真实回答里的段落。</p><ul><li>列表</li></ul>")
+                .append("<figure><img src=\"data:image/gif;base64,R0lGOD\" data-rawwidth=\"1080\" data-rawheight=\"720\"/></figure>")
+        }
+        val answers = (1..10).map { Answer("作者 $it", content.toString()) }
+        val page = AnswerPageView(Question("42", "大回答"), 0, 600)
+        val renderer = AnswerStreamRenderer(page, 600)
+        lateinit var view: AnswerListView
+        lateinit var scrollPane: JScrollPane
+        SwingUtilities.invokeAndWait {
+            view = AnswerListView { ZhihuHtmlEditorKit(loader, 600) }
+            scrollPane = JScrollPane(view)
+            view.setPage(page)
+        }
+        queue.maxNanos = 0
+
+        val done = CountDownLatch(answers.size)
+        val pool = Executors.newSingleThreadExecutor()
+        try {
+            for (answer in answers) {
+                pool.execute {
+                    val prepared = renderer.prepare(answer)
+                    SwingUtilities.invokeLater {
+                        renderer.append(answer, prepared)
+                        view.pageChanged()
+                        scrollPane.layoutNow()
+                        done.countDown()
+                    }
+                }
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS))
+        } finally {
+            pool.shutdown()
+        }
+        // 等待可见行的组件构建完成并加入列表
+        scrollPane.layoutUntilBuilt(view)
+        SwingUtilities.invokeAndWait { renderer.finish(answers) }
+
+        SwingUtilities.invokeAndWait { assertEquals(10, page.size()) }
+        assertTrue(view.realizedRowCount > 0)
+        val maxMillis = TimeUnit.NANOSECONDS.toMillis(queue.maxNanos)
+        assertTrue("EDT 上最长的事件耗时 $maxMillis ms", maxMillis < 100)
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.newnovicechen.zhihureader.toolWindow
+
+import com.github.newnovicechen.zhihureader.services.AnswerPageCache
+import com.github.newnovicechen.zhihureader.services.ZhihuService
+import com.github.newnovicechen.zhihureader.utils.HttpEngine
+import com.intellij.testFramework.PlatformTestUtil
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import java.util.concurrent.TimeUnit
+
+class ZhihuPanelTest : BasePlatformTestCase() {
+    private lateinit var server: MockWebServer
+    private lateinit var panel: ZhihuToolWindowFactory.ZhihuPanel
+
+    override fun setUp() {
+        super.setUp()
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse = when (request.requestUrl!!.encodedPath) {
+                "/api/v3/feed/topstory/recommend" -> MockResponse().setBody(
+                    """{"data":[{"target":{"question":{"id":"42","title":"测试问题"}}}]}"""
+                )
+                "/api/v4/questions/42/answers" -> MockResponse().setBody(
+                    """{"data":[{"url":"x","content":"<p>第一段</p><p>第二段</p>","author":{"name":"作者"}}]}"""
+                )
+                else -> MockResponse().setResponseCode(404)
+            }
+        }
+        server.start()
+
+        ZhihuReaderSettings.getInstance().isHtmlMode = true
+        ZhihuReaderSettings.getInstance().zhihuCookie = "z_c0=test"
+        val service = project.getService(ZhihuService::class.java)
+        service.setBaseUrls(server.url("/api/v3").toString(), server.url("/api/v4").toString())
+        service.setAnswerCache(AnswerPageCache(null, 10, 1, TimeUnit.HOURS))
+        panel = ZhihuToolWindowFactory.ZhihuPanel(project)
+    }
+
+    override fun tearDown() {
+        try {
+            server.shutdown()
+            HttpEngine.shutdown()
+            ZhihuReaderSettings.getInstance().zhihuCookie = ""
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    fun testToggleDoesNotRefetchAnswers() {
+        panel.loadRecommend()
+        PlatformTestUtil.waitWithEventsDispatching("推荐没有加载", { panel.menuList.model.size > 0 }, 10)
+
+        panel.menuList.selectedIndex = 0
+        PlatformTestUtil.waitWithEventsDispatching("回答没有加载", { panel.displayedText.contains("第一段") }, 10)
+        val requestsBeforeToggle = server.requestCount
+
+        panel.toggleDisplayMode()
+        PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+        assertTrue(panel.displayedText.contains("第一段"))
+        assertFalse(panel.displayedText.contains("<p>"))
+
+        panel.toggleDisplayMode()
+        PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+        assertTrue(panel.displayedText.contains("第二段"))
+        assertEquals(requestsBeforeToggle, server.requestCount)
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.newnovicechen.zhihureader.utils
+
+import com.github.newnovicechen.zhihureader.model.corrupted
+import org.jsoup.Jsoup
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AnswerContentTest {
+    private val sample = """
+        <p>第一段&nbsp;文字<br>换行<b>加粗</b></p>
+        <ul><li>甲</li><li>乙 <a href="https://zhuanlan.zhihu.com/p/1?a=1&amp;b=2">链接</a></li></ul>
+        <figure data-size="normal"><noscript><img src="https://pic1.zhimg.com/x_b.jpg"></noscript>
+        <img src="data:image/svg+xml;utf8,&lt;svg/&gt;" style="width:1080px;margin:0" data-rawwidth="1080" data-rawheight="720"
+             data-actualsrc="https://pic1.zhimg.com/x_b.jpg" data-original="https://pic1.zhimg.com/x_r.jpg">
+        <figcaption>图注</figcaption></figure>
+        <script>alert(1)</script><p>最后 1 &lt; 2</p>
+    """.trimIndent()
+
+    // 优化前 htmlToPlainText 的实现，纯文本输出应当保持一致
+    private fun legacyPlainText(html: String): String {
+        val doc = Jsoup.parse(html)
+        for (br in doc.select("br")) br.after("\n")
+        for (p in doc.select("p")) p.after("\n")
+        for (li in doc.select("li")) li.prepend("• ").after("\n")
+        return doc.body().wholeText().replace("\u00A0", " ").trim()
+    }
+
+    @Test
+    fun plainTextMatchesTheLegacyConversion() {
+        assertEquals(legacyPlainText(sample), AnswerContent(sample, 600).plainText())
+    }
+
+    @Test
+    fun imagesUseTheRealSourceAndMaxWidth() {
+        val body = Jsoup.parseBodyFragment(AnswerContent(sample, 600).swingHtml()).body()
+        val images = body.select("img")
+
+        assertEquals(1, images.size)
+        assertEquals("https://pic1.zhimg.com/x_b.jpg", images.attr("src"))
+        assertEquals("600", images.attr("width"))
+        assertEquals("margin:0", images.attr("style"))
+        assertEquals("1080", images.attr("data-rawwidth"))
+    }
+
+    @Test
+    fun unsupportedTagsAreRemovedOrRenamed() {
+        val html = AnswerContent(sample, 600).swingHtml()
+
+        assertFalse(html.contains("<script"))
+        assertFalse(html.contains("<figure"))
+        assertTrue(html.contains("<p>图注</p>"))
+        assertTrue(html.contains("1 &lt; 2"))
+        assertTrue(html.contains("a=1&amp;b=2"))
+    }
+
+    @Test
+    fun emptyContent() {
+        val content = AnswerContent(null, 600)
+
+        assertEquals("", content.swingHtml())
+        assertEquals("", content.plainText())
+    }
+
+    @Test
+    fun corruptedContentShowsAContentError() {
+        val content = AnswerContent.of(corrupted(), 600)
+
+        assertEquals("回答正文解压失败，无法显示", content.plainText())
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.newnovicechen.zhihureader.utils
+
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+class HttpEngineTest {
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setUp() {
+        HttpEngine.shutdown()
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        HttpEngine.shutdown()
+    }
+
+    @Test
+    fun allRequestsReuseOneConnection() {
+        val requests = 11
+        repeat(requests) { server.enqueue(MockResponse().setBody("{\"ok\":true}")) }
+
+        repeat(requests) {
+            SendHttpUtil.sendHttpGet(server.url("/answers/$it"), mapOf("Cookie" to "c"))
+        }
+
+        // sequenceNumber 为 0 表示该请求是新连接上的第一个请求，也就是发生了一次握手
+        var handshakes = 0
+        repeat(requests) {
+            if (server.takeRequest().sequenceNumber == 0) handshakes++
+        }
+        assertEquals(1, handshakes)
+        assertEquals(requests, server.requestCount)
+    }
+
+    @Test
+    fun failedResponsesReleaseTheirConnection() {
+        server.enqueue(MockResponse().setResponseCode(500).setBody("boom"))
+        server.enqueue(MockResponse().setBody("{}"))
+
+        runCatching { SendHttpUtil.sendHttpGet(server.url("/fail")) }
+        SendHttpUtil.sendHttpGet(server.url("/ok"))
+
+        assertEquals(0, server.takeRequest().sequenceNumber)
+        assertEquals(1, server.takeRequest().sequenceNumber)
+    }
+
+    @Test
+    fun timedOutAsyncRequestIsCancelled() {
+        server.enqueue(MockResponse().setBody("{}").setHeadersDelay(5, TimeUnit.SECONDS))
+
+        val future = SendHttpUtil.sendHttpGetAsync(server.url("/slow"), null).orTimeout(200, TimeUnit.MILLISECONDS)
+        try {
+            future.get()
+            fail()
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause is TimeoutException)
+        }
+
+        val dispatcher = HttpEngine.apiClient().dispatcher
+        val deadline = System.currentTimeMillis() + 2_000
+        while (dispatcher.runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(0, dispatcher.runningCallsCount())
+    }
+
+    @Test
+    fun proxyClientsShareThePoolAndDispatcher() {
+        val proxy = Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved("localhost", 3128))
+        val base = HttpEngine.client()
+        val proxied = HttpEngine.client(proxy)
+
+        assertNotSame(base, proxied)
+        assertSame(proxied, HttpEngine.client(proxy))
+        assertSame(base.connectionPool, proxied.connectionPool)
+        assertSame(base.dispatcher, proxied.dispatcher)
+    }
+
+    @Test
+    fun shutdownReleasesTheSharedClient() {
+        val before = HttpEngine.client()
+        HttpEngine.shutdown()
+
+        assertTrue(before.dispatcher.executorService.isShutdown)
+        assertEquals(0, before.connectionPool.connectionCount())
+        assertNotSame(before, HttpEngine.client())
+    }
+}
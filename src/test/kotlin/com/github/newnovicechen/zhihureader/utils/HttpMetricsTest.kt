@@ -0,0 +1,72 @@
+package com.github.newnovicechen.zhihureader.utils
+
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class HttpMetricsTest {
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setUp() {
+        HttpEngine.shutdown()
+        HttpMetrics.shared().reset()
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        HttpEngine.shutdown()
+    }
+
+    @Test
+    fun percentilesAreWithinBucketPrecision() {
+        val histogram = LatencyHistogram()
+        // 1 到 1000 毫秒各一次
+        for (ms in 1..1000) histogram.record(TimeUnit.MILLISECONDS.toNanos(ms.toLong()))
+
+        assertEquals(1000, histogram.count)
+        assertEquals(500.0, histogram.percentileMillis(50.0), 500 * 0.04)
+        assertEquals(990.0, histogram.percentileMillis(99.0), 990 * 0.04)
+        assertEquals(1000.0, histogram.maxMillis, 0.001)
+        assertEquals(500.5, histogram.meanMillis, 0.001)
+    }
+
+    @Test
+    fun bucketsCoverEveryValueInOrder() {
+        var previous = -1
+        for (micros in longArrayOf(0, 1, 63, 64, 65, 127, 128, 1_000, 65_535, 1L shl 31, TimeUnit.HOURS.toMicros(1))) {
+            val index = LatencyHistogram.indexOf(micros)
+            assertTrue(index >= previous)
+            assertTrue(LatencyHistogram.upperBound(index) >= micros)
+            previous = index
+        }
+    }
+
+    @Test
+    fun requestsRecordPhasesAndConnectionReuse() {
+        repeat(3) { server.enqueue(MockResponse().setBody("{\"ok\":true}").setHeadersDelay(20, TimeUnit.MILLISECONDS)) }
+
+        repeat(3) { SendHttpUtil.sendHttpGet(server.url("/answers/$it")) }
+
+        val metrics = HttpMetrics.shared()
+        // callEnd 在响应体读完之后发出，可能稍晚于调用方拿到结果
+        val deadline = System.currentTimeMillis() + 2_000
+        while (metrics.histogram(HttpMetrics.Phase.CALL).count < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(3, metrics.calls)
+        assertEquals(3, metrics.connectionsAcquired)
+        assertEquals(1, metrics.connectionsCreated)
+        assertEquals(3, metrics.histogram(HttpMetrics.Phase.PARSE).count)
+        assertTrue(metrics.histogram(HttpMetrics.Phase.TTFB).percentileMillis(50.0) >= 20)
+        assertTrue(metrics.report().contains("/answers/2"))
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.newnovicechen.zhihureader.utils
+
+import com.github.newnovicechen.zhihureader.exception.HttpException
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ResilienceInterceptorTest {
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setUp() {
+        // 指数退避从 5 毫秒开始，熔断阈值设为 3
+        HttpEngine.configureResilience(ResilienceInterceptor.Config(1000.0, 100, 2, 5, 2000, 3, 60_000))
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        HttpEngine.configureResilience(ResilienceInterceptor.Config.fromSystemProperties())
+    }
+
+    @Test
+    fun throttledGetIsRetriedAfterRetryAfter() {
+        server.enqueue(MockResponse().setResponseCode(429).setHeader("Retry-After", "1"))
+        server.enqueue(MockResponse().setBody("{\"ok\":true}"))
+
+        val start = System.nanoTime()
+        val result = SendHttpUtil.sendHttpGet(server.url("/answers"), mapOf("Cookie" to "c"))
+
+        assertTrue(result.get("ok").asBoolean)
+        assertEquals(2, server.requestCount)
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900)
+    }
+
+    @Test
+    fun exhaustedRetriesKeepStatusAndBody() {
+        repeat(3) { server.enqueue(MockResponse().setResponseCode(503).setBody("busy")) }
+
+        try {
+            SendHttpUtil.sendHttpGet(server.url("/answers"))
+            fail()
+        } catch (e: HttpException) {
+            assertEquals(503, e.statusCode)
+            assertEquals("busy", e.body)
+        }
+        // 第一次请求加两次重试
+        assertEquals(3, server.requestCount)
+    }
+
+    @Test
+    fun postIsNotRetried() {
+        server.enqueue(MockResponse().setResponseCode(429).setBody("slow down"))
+        server.enqueue(MockResponse().setBody("{}"))
+
+        try {
+            SendHttpUtil.sendHttpPost(server.url("/vote"), "{}")
+            fail()
+        } catch (e: HttpException) {
+            assertTrue(e.isThrottled)
+        }
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun repeatedFailuresOpenTheCircuit() {
+        repeat(3) { server.enqueue(MockResponse().setResponseCode(500)) }
+        repeat(3) { runCatching { SendHttpUtil.sendHttpGet(server.url("/answers/$it")) } }
+
+        server.enqueue(MockResponse().setBody("{}"))
+        try {
+            SendHttpUtil.sendHttpGet(server.url("/answers/ok"))
+            fail()
+        } catch (e: HttpException) {
+            assertEquals(-1, e.statusCode)
+        }
+        // 熔断期间的请求没有发到服务端
+        assertEquals(3, server.requestCount)
+    }
+
+    @Test
+    fun backoffDoesNotHoldTheDispatcherSlot() {
+        // 每个主机只允许一个并发请求，退避 1 秒左右
+        HttpEngine.configure(8, 300, TimeUnit.SECONDS, 1)
+        HttpEngine.configureResilience(ResilienceInterceptor.Config(1000.0, 100, 2, 2000, 2000, 3, 60_000))
+        val busy = AtomicInteger()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse =
+                if (request.path == "/busy" && busy.getAndIncrement() == 0) MockResponse().setResponseCode(503)
+                else MockResponse().setBody("{\"ok\":true}")
+        }
+        try {
+            val retried = SendHttpUtil.sendHttpGetAsync(server.url("/busy"), null)
+            server.takeRequest(5, TimeUnit.SECONDS)
+
+            // 第一个请求在等待重试，另一个请求不用排在它后面
+            val start = System.nanoTime()
+            assertTrue(SendHttpUtil.sendHttpGet(server.url("/other")).get("ok").asBoolean)
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500)
+            assertTrue(retried.get(5, TimeUnit.SECONDS).get("ok").asBoolean)
+        } finally {
+            HttpEngine.configure(8, 300, TimeUnit.SECONDS, 10)
+        }
+    }
+
+    @Test
+    fun throttlingHalvesTheRateAndSuccessesRestoreIt() {
+        val bucket = ResilienceInterceptor.TokenBucket(10.0, 1)
+        val now = System.nanoTime()
+        assertEquals(0, bucket.reserve(now))
+        // 容量用完后，下一个令牌要等 1/10 秒
+        assertEquals(100, TimeUnit.NANOSECONDS.toMillis(bucket.reserve(now)))
+
+        bucket.throttled(now, TimeUnit.SECONDS.toNanos(2))
+        assertEquals(5.0, bucket.ratePerSecond(), 0.001)
+        assertTrue(bucket.reserve(now) >= TimeUnit.SECONDS.toNanos(2))
+
+        repeat(20) { bucket.succeeded() }
+        assertEquals(10.0, bucket.ratePerSecond(), 0.001)
+    }
+}
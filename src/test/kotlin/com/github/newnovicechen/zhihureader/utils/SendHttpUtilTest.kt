@@ -0,0 +1,50 @@
+package com.github.newnovicechen.zhihureader.utils
+
+import com.github.newnovicechen.zhihureader.exception.HttpException
+import com.google.gson.JsonObject
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class SendHttpUtilTest {
+
+    class Vote {
+        var id: String? = null
+        var count: Int = 0
+    }
+
+    private fun response(json: String): Response = Response.Builder()
+        .request(Request.Builder().url("https://www.zhihu.com/api/v4/answers/1").build())
+        .protocol(Protocol.HTTP_1_1)
+        .code(200)
+        .message("OK")
+        .body(json.toResponseBody("application/json".toMediaType()))
+        .build()
+
+    @Test
+    fun classIsDecodedInOnePass() {
+        val vote = SendHttpUtil.checkResponse(response("""{"code":200,"id":"7","count":3,"extra":{"a":[1,2]}}"""), Vote::class.java)
+
+        assertEquals("7", vote.id)
+        assertEquals(3, vote.count)
+    }
+
+    @Test
+    fun envelopeIsCheckedForClassWithoutCodeField() {
+        val error = runCatching {
+            SendHttpUtil.checkResponse(response("""{"id":"7","code":500,"errorStackTrace":"boom"}"""), Vote::class.java)
+        }.exceptionOrNull()
+
+        assertEquals(HttpException::class.java, error?.javaClass)
+        assertEquals("boom", error?.message)
+    }
+
+    @Test(expected = HttpException::class)
+    fun envelopeIsCheckedForJsonObject() {
+        SendHttpUtil.checkResponse(response("""{"code":"403","errorStackTrace":"denied"}"""), JsonObject::class.java)
+    }
+}
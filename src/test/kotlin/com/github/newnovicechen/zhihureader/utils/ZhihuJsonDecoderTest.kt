@@ -0,0 +1,81 @@
+package com.github.newnovicechen.zhihureader.utils
+
+import com.github.newnovicechen.zhihureader.exception.HttpException
+import com.google.gson.stream.JsonReader
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.io.StringReader
+
+class ZhihuJsonDecoderTest {
+
+    private fun <T> decode(decoder: ZhihuJsonDecoder<T, *>, json: String): T =
+        decoder.decode(JsonReader(StringReader(json)))
+
+    @Test
+    fun recommendFeedSkipsItemsWithoutQuestion() {
+        val json = """
+            {"data":[
+              {"id":"1","type":"feed","target":{"type":"answer","content":"<p>long</p>","question":{"id":123,"title":"问题一","detail":"..."}}},
+              {"id":"2","type":"feed_advert","ad":{"creatives":[]}},
+              {"id":"3","type":"feed","target":{"type":"article","title":"文章"}},
+              {"id":"4","type":"feed","target":{"type":"answer","question":null}},
+              {"id":"5","type":"feed","target":{"type":"answer","question":{"id":"456","title":"问题二"}}}
+            ],"paging":{"is_end":false,"next":"https://www.zhihu.com/api/v3/feed/topstory/recommend?page_number=2"}}
+        """.trimIndent()
+
+        val page = decode(RecommendFeedDecoder.INSTANCE, json)
+
+        assertEquals(listOf("123", "456"), page.questions.map { it.id })
+        assertEquals(listOf("问题一", "问题二"), page.questions.map { it.title })
+        assertFalse(page.isEnd)
+        assertEquals("https://www.zhihu.com/api/v3/feed/topstory/recommend?page_number=2", page.nextUrl)
+    }
+
+    @Test
+    fun recommendFeedWithoutNextIsTheEnd() {
+        val page = decode(RecommendFeedDecoder.INSTANCE, """{"data":[],"paging":{"is_end":false}}""")
+
+        assertTrue(page.isEnd)
+    }
+
+    @Test
+    fun answerPageReadsOnlyNeededFields() {
+        val json = """
+            {"paging":{"is_end":true},"data":[
+              {"id":1,"url":"https://www.zhihu.com/api/v4/answers/1","author":{"name":"甲","headline":"x"},"content":"<p>a</p>","voteup_count":3},
+              {"id":2,"url":"https://www.zhihu.com/api/v4/answers/2","author":{"name":"乙"}},
+              {"id":3,"url":"https://www.zhihu.com/api/v4/answers/3","author":null,"content":"<p>c</p>"}
+            ]}
+        """.trimIndent()
+
+        val items = decode(AnswerPageDecoder.INSTANCE, json)
+
+        assertEquals(3, items.size)
+        assertEquals("甲", items[0].authorName)
+        assertEquals("<p>a</p>", items[0].content)
+        assertNull(items[1].content)
+        assertEquals("https://www.zhihu.com/api/v4/answers/2", items[1].url)
+        assertEquals("", items[2].authorName)
+    }
+
+    @Test
+    fun answerDetailIsDecodedFromTopLevel() {
+        val item = decode(AnswerPageDecoder.DETAIL, """{"id":7,"content":"<p>d</p>","author":{"name":"丙"},"question":{"title":"t"}}""")
+
+        assertEquals("<p>d</p>", item.content)
+        assertEquals("丙", item.authorName)
+    }
+
+    @Test(expected = HttpException::class)
+    fun errorEnvelopeIsReported() {
+        decode(AnswerPageDecoder.INSTANCE, """{"error":{"code":10003,"message":"请求参数异常"}}""")
+    }
+
+    @Test(expected = HttpException::class)
+    fun legacyCodeEnvelopeIsReported() {
+        decode(RecommendFeedDecoder.INSTANCE, """{"code":500,"errorStackTrace":"boom","data":[]}""")
+    }
+}